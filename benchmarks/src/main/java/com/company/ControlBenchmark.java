@@ -0,0 +1,80 @@
+package com.company;
+
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// The control law on its own, and one frame's worth of work from pixels to a wheel command
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ControlBenchmark {
+    @Param({"720p", "1080p"})
+    public String resolution;
+
+    private Mat frame;
+    private SquareDetector detector;
+    private KobukiController controller;
+    private NullRobot robot;
+
+    private double distance = 2.5;
+
+    // Accepts commands without a serial port
+    static class NullRobot implements Robot {
+        short speed, radius;
+
+        public void baseControl(short speed, short radius) {
+            this.speed = speed;
+            this.radius = radius;
+        }
+
+        public int getLeftEncoder() {
+            return 0;
+        }
+
+        public int getRightEncoder() {
+            return 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        frame = Frames.load("square", resolution);
+        detector = new SquareDetector();
+        robot = new NullRobot();
+        controller = new KobukiController(robot, PreviewSink.NONE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        controller.shutdown();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public short updateSpeed() {
+        // Alternate either side of the set point so the controller keeps working
+        distance = distance > 2.4 ? 2.2 : 2.6;
+        controller.updateSpeed(distance);
+
+        return controller.getSpeed();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public short frameToCommand() throws Exception {
+        MatOfPoint2f s = detector.find(frame, Frames.MIN_GREEN, Frames.MAX_GREEN);
+
+        if (s != null)
+            controller.updateSpeed(KobukiCamera.areaToDistance(Imgproc.contourArea(s)));
+
+        robot.baseControl(controller.getSpeed(), (short) 0);
+
+        return robot.speed;
+    }
+}
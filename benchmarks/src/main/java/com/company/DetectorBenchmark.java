@@ -0,0 +1,127 @@
+package com.company;
+
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Each stage of findSquare on its own, then the whole search in each of its modes
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DetectorBenchmark {
+    @Param({"480p", "720p", "1080p"})
+    public String resolution;
+
+    @Param({"square", "clutter"})
+    public String scene;
+
+    private Mat frame;
+    private final Mat hsv = new Mat();
+    private final Mat mask = new Mat();
+    private final Mat work = new Mat();
+    private final Mat hierarchy = new Mat();
+    private final Mat labels = new Mat();
+    private final Mat stats = new Mat();
+    private final Mat centroids = new Mat();
+    private final List<MatOfPoint> contours = new ArrayList<>();
+    private Mat strEl;
+
+    private SquareDetector full;
+    private SquareDetector tracking;
+    private SquareDetector pyramid;
+    private SquareDetector parallel;
+
+    @Setup
+    public void setup() {
+        frame = Frames.load(scene, resolution);
+        strEl = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(15, 15));
+
+        // Stage inputs, so each stage can be timed on its own
+        Imgproc.cvtColor(frame, hsv, Imgproc.COLOR_RGB2HSV);
+        Core.inRange(hsv, Frames.MIN_GREEN, Frames.MAX_GREEN, mask);
+        Imgproc.morphologyEx(mask, mask, Imgproc.MORPH_CLOSE, strEl);
+        Imgproc.morphologyEx(mask, mask, Imgproc.MORPH_OPEN, strEl);
+
+        full = new SquareDetector();
+        full.setTracking(false);
+
+        tracking = new SquareDetector();
+
+        pyramid = new SquareDetector();
+        pyramid.setTracking(false);
+        pyramid.setPyramidLevel(1);
+
+        parallel = new SquareDetector();
+        parallel.setTracking(false);
+        parallel.setParallel(true);
+    }
+
+    @Benchmark
+    public Mat cvtColor() {
+        Imgproc.cvtColor(frame, hsv, Imgproc.COLOR_RGB2HSV);
+        return hsv;
+    }
+
+    @Benchmark
+    public Mat inRange() {
+        Core.inRange(hsv, Frames.MIN_GREEN, Frames.MAX_GREEN, work);
+        return work;
+    }
+
+    @Benchmark
+    public Mat morphology() {
+        // Includes one mask copy so every iteration starts from the same input
+        mask.copyTo(work);
+        Imgproc.morphologyEx(work, work, Imgproc.MORPH_CLOSE, strEl);
+        Imgproc.morphologyEx(work, work, Imgproc.MORPH_OPEN, strEl);
+        return work;
+    }
+
+    @Benchmark
+    public int components() {
+        return Imgproc.connectedComponentsWithStats(mask, labels, stats, centroids);
+    }
+
+    // What the components stage replaced; the GC profiler shows the Mats it allocates per contour
+    @Benchmark
+    public int findContours() {
+        mask.copyTo(work);
+        Imgproc.findContours(work, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+
+        int n = contours.size();
+
+        for (MatOfPoint c: contours)
+            c.release();
+
+        contours.clear();
+
+        return n;
+    }
+
+    @Benchmark
+    public MatOfPoint2f findFull() {
+        return full.find(frame, Frames.MIN_GREEN, Frames.MAX_GREEN);
+    }
+
+    @Benchmark
+    public MatOfPoint2f findTracking() {
+        return tracking.find(frame, Frames.MIN_GREEN, Frames.MAX_GREEN);
+    }
+
+    @Benchmark
+    public MatOfPoint2f findPyramid() {
+        return pyramid.find(frame, Frames.MIN_GREEN, Frames.MAX_GREEN);
+    }
+
+    @Benchmark
+    public MatOfPoint2f findParallel() {
+        return parallel.find(frame, Frames.MIN_GREEN, Frames.MAX_GREEN);
+    }
+}
@@ -0,0 +1,109 @@
+package com.company;
+
+import org.opencv.core.*;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+// Benchmark corpus: synthetic scenes generated on the fly, plus real frames from benchmarks/corpus
+final class Frames {
+    static { System.loadLibrary(Core.NATIVE_LIBRARY_NAME); }
+
+    static final Scalar MIN_GREEN = new Scalar(30, 60, 85);
+    static final Scalar MAX_GREEN = new Scalar(50, 200, 255);
+
+    // A green that falls inside the default thresholds once the frame goes through COLOR_RGB2HSV
+    private static final Scalar GREEN = new Scalar(163, 204, 82);
+
+    private Frames() {
+    }
+
+    static Size size(String resolution) {
+        switch (resolution) {
+            case "480p":
+                return new Size(640, 480);
+            case "720p":
+                return new Size(1280, 720);
+            case "1080p":
+                return new Size(1920, 1080);
+            default:
+                throw new IllegalArgumentException("Unknown resolution " + resolution);
+        }
+    }
+
+    static Mat load(String scene, String resolution) {
+        Size size = size(resolution);
+
+        switch (scene) {
+            case "square":
+                return square(size);
+            case "clutter":
+                return clutter(size);
+            case "real":
+                return real(size);
+            default:
+                throw new IllegalArgumentException("Unknown scene " + scene);
+        }
+    }
+
+    // One 10 cm square roughly 2 m away, on a noisy background
+    static Mat square(Size size) {
+        Mat m = background(size, 1);
+        drawSquare(m, size.width * 0.45, size.height * 0.4, size.height * 0.12);
+
+        return m;
+    }
+
+    // The square plus other green blobs and bars
+    static Mat clutter(Size size) {
+        Mat m = background(size, 2);
+        Random r = new Random(42);
+
+        for (int i = 0; i < 30; i++) {
+            Point c = new Point(r.nextDouble() * size.width, r.nextDouble() * size.height);
+            Imgproc.circle(m, c, 5 + r.nextInt((int) (size.height / 20)), GREEN, -1);
+        }
+
+        for (int i = 0; i < 5; i++) {
+            Point p = new Point(r.nextDouble() * size.width, r.nextDouble() * size.height);
+            Imgproc.rectangle(m, p, new Point(p.x + size.width / 6, p.y + size.height / 60), GREEN, -1);
+        }
+
+        drawSquare(m, size.width * 0.3, size.height * 0.5, size.height * 0.1);
+
+        return m;
+    }
+
+    static void drawSquare(Mat m, double x, double y, double side) {
+        Imgproc.rectangle(m, new Point(x, y), new Point(x + side, y + side), GREEN, -1);
+    }
+
+    private static Mat background(Size size, long seed) {
+        Mat m = new Mat(size, CvType.CV_8UC3);
+
+        Core.setRNGSeed((int) seed);
+        Core.randu(m, 0, 255);
+        Imgproc.GaussianBlur(m, m, new Size(31, 31), 0);
+
+        return m;
+    }
+
+    // First image in benchmarks/corpus, scaled to the requested resolution
+    static Mat real(Size size) {
+        File[] files = new File("benchmarks/corpus").listFiles((dir, name) ->
+                name.endsWith(".png") || name.endsWith(".jpg") || name.endsWith(".bmp"));
+
+        if (files == null || files.length == 0)
+            throw new IllegalStateException("No frames in benchmarks/corpus");
+
+        Arrays.sort(files);
+
+        Mat m = Imgcodecs.imread(files[0].getPath());
+        Imgproc.resize(m, m, size);
+
+        return m;
+    }
+}
@@ -0,0 +1,51 @@
+package com.company;
+
+import org.opencv.core.*;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Vision-thread cost of showImage: the old BMP round trip vs the pixel copy PreviewRenderer does
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PreviewBenchmark {
+    @Param({"480p", "720p", "1080p"})
+    public String resolution;
+
+    private final Mat mask = new Mat();
+    private byte[] pixels;
+
+    @Setup
+    public void setup() {
+        Mat frame = Frames.load("square", resolution);
+        Mat hsv = new Mat();
+
+        Imgproc.cvtColor(frame, hsv, Imgproc.COLOR_RGB2HSV);
+        Core.inRange(hsv, Frames.MIN_GREEN, Frames.MAX_GREEN, mask);
+
+        pixels = new byte[(int) mask.total()];
+    }
+
+    @Benchmark
+    public byte[] bmpEncode() {
+        MatOfByte mb = new MatOfByte();
+        Imgcodecs.imencode(".bmp", mask, mb);
+
+        byte[] out = mb.toArray();
+        mb.release();
+
+        return out;
+    }
+
+    @Benchmark
+    public byte[] pixelCopy() {
+        mask.get(0, 0, pixels);
+        return pixels;
+    }
+}
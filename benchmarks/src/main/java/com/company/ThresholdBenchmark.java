@@ -0,0 +1,48 @@
+package com.company;
+
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Serial vs banded parallel threshold + morphology
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThresholdBenchmark {
+    @Param({"720p", "1080p"})
+    public String resolution;
+
+    private Mat frame;
+    private final Mat hsv = new Mat();
+    private final Mat mask = new Mat();
+    private Mat strEl;
+    private ParallelThreshold threshold;
+
+    @Setup
+    public void setup() {
+        frame = Frames.load("clutter", resolution);
+        mask.create(frame.rows(), frame.cols(), CvType.CV_8UC1);
+        strEl = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(15, 15));
+        threshold = new ParallelThreshold();
+    }
+
+    @Benchmark
+    public Mat serial() {
+        Imgproc.cvtColor(frame, hsv, Imgproc.COLOR_RGB2HSV);
+        Core.inRange(hsv, Frames.MIN_GREEN, Frames.MAX_GREEN, mask);
+        Imgproc.morphologyEx(mask, mask, Imgproc.MORPH_CLOSE, strEl);
+        Imgproc.morphologyEx(mask, mask, Imgproc.MORPH_OPEN, strEl);
+        return mask;
+    }
+
+    @Benchmark
+    public Mat parallel() {
+        threshold.apply(frame, mask, Frames.MIN_GREEN, Frames.MAX_GREEN, strEl);
+        return mask;
+    }
+}
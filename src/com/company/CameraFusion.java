@@ -0,0 +1,111 @@
+package com.company;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Several cameras, each a full KobukiCamera pipeline with its own capture and processing tasks,
+// merged into one target position in the robot frame. Fusion runs when the target is read, on the
+// observations each pipeline last published, so a slow or stalled camera never holds up the
+// others: its detections simply age out of the window.
+public class CameraFusion {
+    private static final class Entry {
+        final KobukiCamera camera;
+        final CameraMount mount;
+
+        Entry(KobukiCamera camera, CameraMount mount) {
+            this.camera = camera;
+            this.mount = mount;
+        }
+    }
+
+    private final Clock clock;
+    private volatile Entry[] entries = new Entry[0];
+
+    // Detections older than this are left out
+    private volatile long maxAge = TimeUnit.MILLISECONDS.toNanos(200);
+
+    // Last merged position, kept while no camera sees the target; only touched by the reading thread
+    private FusedTarget last = FusedTarget.NONE;
+
+    CameraFusion() {
+        this(Clock.SYSTEM);
+    }
+
+    // The clock the cameras stamp their frames with
+    CameraFusion(Clock clock) {
+        this.clock = clock;
+    }
+
+    // Cameras are added while stopped
+    public synchronized void add(KobukiCamera camera, CameraMount mount) {
+        Entry[] e = Arrays.copyOf(entries, entries.length + 1);
+        e[e.length - 1] = new Entry(camera, mount);
+        entries = e;
+    }
+
+    public void start(int task) {
+        for (Entry e : entries)
+            e.camera.start(task);
+    }
+
+    public void stop() {
+        for (Entry e : entries)
+            e.camera.stop();
+    }
+
+    // Inverse-variance average of every fresh detection. The area-based distance error grows
+    // roughly with distance, so far sightings count for less.
+    public FusedTarget fuse() {
+        long now = clock.nanoTime();
+
+        double sx = 0, sy = 0, sw = 0;
+        int cameras = 0;
+        long newest = 0;
+        boolean visible = false;
+
+        for (Entry e : entries) {
+            Observation o = e.camera.getObservation();
+
+            if (o.getMeasuredSequence() != 0 && o.isVisible())
+                visible = true;
+
+            if (!o.isVisibleThisFrame() || !o.hasCorners() || now - o.getCaptureTime() > maxAge)
+                continue;
+
+            double column = (o.getCornerX(0) + o.getCornerX(1) + o.getCornerX(2) + o.getCornerX(3)) / 4;
+            double bearing = e.mount.bearing(column, e.camera.getFrameWidth());
+            double d = o.getDistance();
+            double w = 1 / (d * d);
+
+            sx += w * (e.mount.getX() + d * Math.cos(bearing));
+            sy += w * (e.mount.getY() + d * Math.sin(bearing));
+            sw += w;
+
+            cameras++;
+            newest = Math.max(newest, o.getCaptureTime());
+        }
+
+        if (cameras == 0)
+            last = new FusedTarget(last.getTime(), last.getX(), last.getY(), 0, visible);
+        else
+            last = new FusedTarget(newest, sx / sw, sy / sw, cameras, visible);
+
+        return last;
+    }
+
+    public int size() {
+        return entries.length;
+    }
+
+    public KobukiCamera getCamera(int i) {
+        return entries[i].camera;
+    }
+
+    public CameraMount getMount(int i) {
+        return entries[i].mount;
+    }
+
+    public void setMaxAge(long millis) {
+        maxAge = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,61 @@
+package com.company;
+
+// Where a camera sits on the robot: position of the lens in the robot frame (x forward, y left,
+// from the centre between the wheels) and the direction it looks. Immutable.
+public final class CameraMount {
+    static final CameraMount FRONT = new CameraMount(0, 0, 0, Math.toRadians(60));
+
+    private final double x; // m
+    private final double y; // m
+    private final double yaw; // rad, counter-clockwise from straight ahead
+    private final double fov; // rad, horizontal
+    private final double focal; // px per unit of tan(angle), for a 1 px wide frame
+
+    CameraMount(double x, double y, double yaw, double fov) {
+        this.x = x;
+        this.y = y;
+        this.yaw = yaw;
+        this.fov = fov;
+        this.focal = 0.5 / Math.tan(fov / 2);
+    }
+
+    // "x,y,yaw[,fov]" in m and degrees, e.g. "0.1,0.12,90"
+    static CameraMount parse(String text) {
+        String[] s = text.split(",");
+
+        if (s.length < 3 || s.length > 4)
+            throw new IllegalArgumentException("Expected x,y,yaw[,fov]: " + text);
+
+        double fov = s.length == 4 ? Double.parseDouble(s[3].trim()) : 60;
+
+        return new CameraMount(Double.parseDouble(s[0].trim()), Double.parseDouble(s[1].trim()),
+                Math.toRadians(Double.parseDouble(s[2].trim())), Math.toRadians(fov));
+    }
+
+    // Direction of a pixel column in the robot frame; columns left of centre are counter-clockwise
+    public double bearing(double column, int width) {
+        return yaw + Math.atan((width / 2.0 - column) / (focal * width));
+    }
+
+    // Inverse of bearing(), for rendering; NaN outside the field of view
+    public double column(double bearing, int width) {
+        double off = Math.IEEEremainder(bearing - yaw, 2 * Math.PI);
+
+        if (Math.abs(off) >= fov / 2)
+            return Double.NaN;
+
+        return width / 2.0 - Math.tan(off) * focal * width;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getYaw() {
+        return yaw;
+    }
+}
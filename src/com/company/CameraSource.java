@@ -0,0 +1,42 @@
+package com.company;
+
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+public class CameraSource implements FrameSource {
+    private final int device;
+    private VideoCapture video = null;
+
+    CameraSource(int device) {
+        this.device = device;
+    }
+
+    public boolean open() {
+        video = new VideoCapture();
+        video.open(device);
+
+        return video.isOpened();
+    }
+
+    public boolean read(Mat frame) {
+        return video.read(frame);
+    }
+
+    public int getWidth() {
+        return (int) video.get(Videoio.CAP_PROP_FRAME_WIDTH);
+    }
+
+    public int getHeight() {
+        return (int) video.get(Videoio.CAP_PROP_FRAME_HEIGHT);
+    }
+
+    public boolean isLive() {
+        return true;
+    }
+
+    public void release() {
+        if (video != null && video.isOpened())
+            video.release();
+    }
+}
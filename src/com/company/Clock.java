@@ -0,0 +1,10 @@
+package com.company;
+
+// Source of time for everything that waits or measures an age. SYSTEM is the wall clock; a
+// VirtualScheduler's clock only moves as it runs its events.
+public interface Clock {
+    Clock SYSTEM = System::nanoTime;
+
+    // ns, only meaningful as a difference between two readings of the same clock
+    long nanoTime();
+}
@@ -0,0 +1,231 @@
+package com.company;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Single writer in front of the robot. baseControl only posts the latest (speed, radius) into a
+// lock-free slot; a write task sends it no faster than the minimum update period. The task runs on the
+// shared scheduler, or on a thread of its own for robots whose writes block, like the serial port.
+// Commands superseded before they are sent are dropped, repeats are only sent as keep-alives,
+// and stops (0, 0) are sent at once and cannot be overwritten by anything but another stop. The
+// latest command posted while a stop is pending waits behind it and follows a period later.
+public class CommandWriter implements Robot {
+    // Slot layout: PRESENT | speed << 16 | radius; zero means empty
+    private static final long PRESENT = 1L << 32;
+    private static final long EMPTY = 0;
+    private static final long STOP = PRESENT;
+
+    private final Robot robot;
+    private final long minPeriod;
+    private volatile long keepAlive;
+
+    private final AtomicLong slot = new AtomicLong(EMPTY);
+    private final AtomicLong behindStop = new AtomicLong(EMPTY);
+    private final AtomicLong posted = new AtomicLong(); // clock time of the newest post
+
+    private final LatencyHistogram writeTime;
+    private final LatencyHistogram queueDelay;
+    private final AtomicLong coalesced;
+    private final AtomicLong redundant;
+    private final AtomicLong keepAlives;
+    private final AtomicLong errors;
+
+    private final Scheduler scheduler;
+    private volatile Scheduler writer = null;
+    private volatile boolean running = false;
+
+    // Set while a write is queued, so posts in between don't queue more
+    private final AtomicBoolean queued = new AtomicBoolean();
+    private final Runnable write = this::write;
+
+    // Only touched by the write task
+    private long lastSent = EMPTY;
+    private long lastWrite;
+
+    CommandWriter(Robot robot, long minPeriodMillis, Metrics metrics, Scheduler scheduler) {
+        this.robot = robot;
+        this.scheduler = scheduler;
+        this.minPeriod = TimeUnit.MILLISECONDS.toNanos(minPeriodMillis);
+        this.keepAlive = TimeUnit.MILLISECONDS.toNanos(200);
+
+        writeTime = metrics.histogram("serial.write");
+        queueDelay = metrics.histogram("serial.queueDelay");
+        coalesced = metrics.counter("serial.coalesced");
+        redundant = metrics.counter("serial.redundant");
+        keepAlives = metrics.counter("serial.keepAlive");
+        errors = metrics.counter("serial.errors");
+    }
+
+    public void start() {
+        if (running)
+            return;
+
+        lastSent = EMPTY;
+        lastWrite = scheduler.nanoTime() - minPeriod;
+
+        writer = robot.isBlocking() ? scheduler.dedicated("serial-writer") : scheduler;
+        running = true;
+    }
+
+    // Never blocks on the serial port; failures are counted and printed by the write task
+    public void baseControl(short speed, short radius) {
+        long command = PRESENT | (speed & 0xFFFFL) << 16 | (radius & 0xFFFFL);
+
+        posted.set(scheduler.nanoTime());
+
+        if (command == STOP) {
+            // Anything waiting behind an earlier stop was posted before this one
+            if (behindStop.getAndSet(EMPTY) != EMPTY)
+                coalesced.incrementAndGet();
+
+            if (slot.getAndSet(STOP) != EMPTY)
+                coalesced.incrementAndGet();
+
+            // Stops skip the wait for the next write slot, even with a write already queued
+            Scheduler w = writer;
+
+            if (w != null)
+                w.execute(write);
+
+            return;
+        }
+
+        while (true) {
+            long pending = slot.get();
+
+            // Wait behind a pending stop; write() hands the command on once the stop is taken
+            if (pending == STOP) {
+                if (behindStop.getAndSet(command) != EMPTY)
+                    coalesced.incrementAndGet();
+
+                if (slot.get() == STOP)
+                    return;
+
+                // The stop was taken meanwhile; post the command ourselves unless write() already did
+                command = behindStop.getAndSet(EMPTY);
+
+                if (command == EMPTY)
+                    return;
+
+                continue;
+            }
+
+            if (slot.compareAndSet(pending, command)) {
+                if (pending != EMPTY)
+                    coalesced.incrementAndGet();
+
+                break;
+            }
+        }
+
+        queue(0);
+    }
+
+    private void queue(long delay) {
+        Scheduler w = writer;
+
+        if (w != null && queued.compareAndSet(false, true))
+            w.schedule(write, delay, TimeUnit.NANOSECONDS);
+    }
+
+    // Runs on the writer's scheduler; a shared one may start a stop while a write is under way,
+    // so writes hold the lock to go out one at a time
+    private synchronized void write() {
+        queued.set(false);
+
+        if (!running)
+            return;
+
+        long pending = slot.get();
+
+        if (pending == EMPTY)
+            return;
+
+        long now = scheduler.nanoTime();
+        long wait = lastWrite + minPeriod - now;
+
+        if (pending != STOP && wait > 0) {
+            queue(wait);
+            return;
+        }
+
+        long command = slot.getAndSet(EMPTY);
+
+        // A command posted behind the stop takes the slot, unless something newer already has
+        if (command == STOP) {
+            long behind = behindStop.getAndSet(EMPTY);
+
+            if (behind != EMPTY && !slot.compareAndSet(EMPTY, behind))
+                coalesced.incrementAndGet();
+        }
+
+        // Same as what the robot is already doing; only repeat it now and then
+        if (command == lastSent && now - lastWrite < keepAlive) {
+            redundant.incrementAndGet();
+
+            if (slot.get() != EMPTY)
+                queue(Math.max(0, wait));
+
+            return;
+        }
+
+        if (command == lastSent)
+            keepAlives.incrementAndGet();
+
+        queueDelay.record(now - posted.get());
+
+        try {
+            long start = System.nanoTime();
+            robot.baseControl((short) (command >>> 16), (short) command);
+            writeTime.recordSince(start);
+        } catch (Exception e) {
+            errors.incrementAndGet();
+            e.printStackTrace();
+        }
+
+        lastSent = command;
+        lastWrite = now;
+
+        // Posted while writing; due a period from now
+        if (slot.get() != EMPTY)
+            queue(minPeriod);
+    }
+
+    // Stops the writer, then sends a final stop directly
+    public void close() {
+        running = false;
+
+        Scheduler w = writer;
+        writer = null;
+
+        if (w != null && w != scheduler)
+            w.shutdown();
+
+        // After any write still under way, so nothing overtakes the stop
+        synchronized (this) {
+            try {
+                robot.baseControl((short) 0, (short) 0);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // How often an unchanged command is repeated while producers keep posting it
+    public void setKeepAlive(long millis) {
+        keepAlive = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    public int getLeftEncoder() {
+        return robot.getLeftEncoder();
+    }
+
+    public int getRightEncoder() {
+        return robot.getRightEncoder();
+    }
+
+    public void readEncoders(int[] out) {
+        robot.readEncoders(out);
+    }
+}
@@ -0,0 +1,89 @@
+package com.company;
+
+import java.util.concurrent.TimeUnit;
+
+// Decides how hard the vision pipeline has to work. While the square keeps showing up in the same
+// place at the same distance, frames are processed at a reduced rate on a coarser pyramid level;
+// as soon as it moves or goes missing, processing is back at full rate and resolution.
+public class DutyCycler {
+    // Frames in a row the target must hold still before backing off
+    private int settleFrames = 15;
+
+    private double distanceTolerance = 0.03; // m
+    private double pixelTolerance = 4; // px, for the square's centre
+
+    private long reducedInterval = TimeUnit.MILLISECONDS.toNanos(100); // ns between frames when reduced
+    private int reducedLevels = 1; // extra pyramid levels when reduced
+
+    private int stableFrames = 0;
+    private boolean reduced = false;
+
+    private double lastDistance;
+    private double lastX, lastY;
+
+    // Called once per processed frame; true when the reduced mode should be used from now on
+    public boolean update(Observation o) {
+        if (!o.isVisibleThisFrame()) {
+            stableFrames = 0;
+            reduced = false;
+            return false;
+        }
+
+        double x = (o.getCornerX(0) + o.getCornerX(1) + o.getCornerX(2) + o.getCornerX(3)) / 4;
+        double y = (o.getCornerY(0) + o.getCornerY(1) + o.getCornerY(2) + o.getCornerY(3)) / 4;
+
+        boolean still = stableFrames > 0
+                && Math.abs(o.getDistance() - lastDistance) <= distanceTolerance
+                && Math.abs(x - lastX) <= pixelTolerance
+                && Math.abs(y - lastY) <= pixelTolerance;
+
+        // Compare against where the target settled, so slow drift still counts as movement
+        if (!still) {
+            lastDistance = o.getDistance();
+            lastX = x;
+            lastY = y;
+            stableFrames = 1;
+            reduced = false;
+            return false;
+        }
+
+        stableFrames++;
+
+        if (stableFrames >= settleFrames)
+            reduced = true;
+
+        return reduced;
+    }
+
+    public boolean isReduced() {
+        return reduced;
+    }
+
+    // Minimum time from the start of one processed frame to the next
+    public long getInterval() {
+        return reduced ? reducedInterval : 0;
+    }
+
+    public int getExtraLevels() {
+        return reduced ? reducedLevels : 0;
+    }
+
+    public void reset() {
+        stableFrames = 0;
+        reduced = false;
+    }
+
+    public void setSettleFrames(int frames) {
+        settleFrames = frames;
+    }
+
+    public void setTolerance(double distance, double pixels) {
+        distanceTolerance = distance;
+        pixelTolerance = pixels;
+    }
+
+    public void setReducedRate(double fps, int extraLevels) {
+        reducedInterval = (long) (1e9 / fps);
+        reducedLevels = extraLevels;
+    }
+}
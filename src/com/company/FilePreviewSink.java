@@ -0,0 +1,58 @@
+package com.company;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+// Keeps a JPEG snapshot of the pipeline's output on disk, e.g. for a web server or `watch` to show.
+// Written on its own thread and renamed into place, so readers never see a partial file.
+public class FilePreviewSink extends JpegPreviewSink {
+    private final Path path;
+    private final Path temp;
+
+    private final AtomicReference<byte[]> latest = new AtomicReference<>();
+    private volatile boolean running = true;
+    private final Thread writer;
+
+    FilePreviewSink(Path path, double fps) {
+        super(fps);
+
+        this.path = path;
+        this.temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        writer = new Thread(this::run, "preview-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    protected void publish(byte[] jpeg) {
+        latest.set(jpeg);
+        LockSupport.unpark(writer);
+    }
+
+    private void run() {
+        while (running) {
+            byte[] jpeg = latest.getAndSet(null);
+
+            if (jpeg == null) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            try {
+                Files.write(temp, jpeg);
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                System.err.println("Preview: " + e);
+            }
+        }
+    }
+
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+    }
+}
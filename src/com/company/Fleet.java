@@ -0,0 +1,99 @@
+package com.company;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Several robots driven from one process. Every robot's control steps, odometry, command writes and
+// camera processing share one scheduler with a thread per core; only blocking calls (webcam reads,
+// serial writes) get threads of their own. Each robot keeps its own metrics and parameters, named after it.
+// Usage: Fleet <name>=<serial port>[@<camera>] ... [--task 1|2]
+public class Fleet {
+    private final Scheduler scheduler;
+    private final List<KobukiController> robots = new ArrayList<>();
+
+    Fleet() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    Fleet(int threads) {
+        // Stopped robots cancel their steps, which then don't stay queued
+        this(RealTimeScheduler.pool("fleet-control", threads));
+    }
+
+    // Every robot on the given scheduler, e.g. a VirtualScheduler to run the whole fleet on virtual time
+    Fleet(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public synchronized KobukiController add(String name, Robot robot, PreviewSink preview) {
+        KobukiController k = new KobukiController(name, robot, preview, scheduler);
+        robots.add(k);
+        return k;
+    }
+
+    // startTask opens the cameras, which can take a while, so every robot is started at once
+    public void startTask(int task) throws InterruptedException {
+        List<Thread> starting = new ArrayList<>();
+
+        for (KobukiController k : getRobots()) {
+            Thread t = new Thread(() -> k.startTask(task), "start-" + k.getName());
+            t.start();
+            starting.add(t);
+        }
+
+        for (Thread t : starting)
+            t.join();
+    }
+
+    public void stop() {
+        getRobots().forEach(KobukiController::stop);
+    }
+
+    public void shutdown() {
+        getRobots().forEach(KobukiController::shutdown);
+        scheduler.shutdown();
+    }
+
+    public synchronized List<KobukiController> getRobots() {
+        return new ArrayList<>(robots);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Fleet fleet = new Fleet();
+        int task = 1;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--task") && i + 1 < args.length) {
+                task = Integer.parseInt(args[++i]);
+                continue;
+            }
+
+            int eq = args[i].indexOf('=');
+
+            if (eq < 0) {
+                System.out.println("Usage: Fleet <name>=<serial port>[@<camera>] ... [--task 1|2]");
+                return;
+            }
+
+            String name = args[i].substring(0, eq);
+            String port = args[i].substring(eq + 1);
+            int camera = 1;
+            int at = port.lastIndexOf('@');
+
+            if (at >= 0) {
+                camera = Integer.parseInt(port.substring(at + 1));
+                port = port.substring(0, at);
+            }
+
+            KobukiController k = fleet.add(name, new SerialRobot(port), PreviewSink.NONE);
+            k.getCamera().setSource(new CameraSource(camera));
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(fleet::shutdown));
+
+        fleet.startTask(task);
+
+        // Until interrupted; the shutdown hook stops every robot
+        Thread.currentThread().join();
+    }
+}
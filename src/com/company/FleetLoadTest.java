@@ -0,0 +1,106 @@
+package com.company;
+
+import edu.ycp.robotics.KobukiRobot;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+// Finds how many robots one machine can drive: runs fleets of growing size, each robot a
+// LoopbackRobot following a looped recording on its own camera pipeline, and reports how well
+// the control steps kept to their period.
+// Usage: FleetLoadTest <file.krec> [--robots 1,2,4,8,16,32] [--seconds 10] [--threads n]
+public class FleetLoadTest {
+    // About a base control packet at 115200 baud
+    private static final long WRITE_TIME = TimeUnit.MICROSECONDS.toNanos(1000);
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            System.out.println("Usage: FleetLoadTest <file.krec> [--robots 1,2,4,8,16,32] [--seconds 10] [--threads n]");
+            return;
+        }
+
+        String path = args[0];
+        String robots = "1,2,4,8,16,32";
+        int seconds = 10;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        for (int i = 1; i < args.length - 1; i++) {
+            if (args[i].equals("--robots"))
+                robots = args[++i];
+            else if (args[i].equals("--seconds"))
+                seconds = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--threads"))
+                threads = Integer.parseInt(args[++i]);
+        }
+
+        System.out.printf("%d cores, %d scheduler threads, %d s per run%n", Runtime.getRuntime().availableProcessors(), threads, seconds);
+        System.out.printf("%6s %14s %7s %12s %12s %12s %8s %10s%n",
+                "robots", "steps", "missed", "late p50", "late p99", "late max", "fps", "cpu ms/s");
+
+        for (String n : robots.split(","))
+            run(path, Integer.parseInt(n.trim()), threads, seconds);
+    }
+
+    private static void run(String path, int n, int threads, int seconds) throws InterruptedException {
+        Fleet fleet = new Fleet(threads);
+
+        for (int i = 0; i < n; i++) {
+            KobukiController k = fleet.add("sim" + i, new LoopbackRobot(WRITE_TIME), PreviewSink.NONE);
+            k.getMetrics().stopSummaryDump();
+
+            // Task 1 ends once the robot has been stopped for 3 s; keep the person out of range so
+            // it never does, whatever distance the recording shows
+            k.getParameters().set("follow.range", "1");
+
+            ReplaySource source = new ReplaySource(path, true);
+            source.setLoop(true);
+            k.getCamera().setSource(source);
+        }
+
+        fleet.startTask(1);
+
+        // Measure the steady state only, once every robot's control steps have started after the camera's startup
+        for (KobukiController k : fleet.getRobots()) {
+            while (!k.isTaskStarted())
+                Thread.sleep(10);
+        }
+
+        for (KobukiController k : fleet.getRobots())
+            k.getMetrics().reset();
+
+        long start = System.nanoTime();
+        long cpuStart = processCpuTime();
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        double cpu = (processCpuTime() - cpuStart) / 1e6 / elapsed;
+
+        long steps = 0, missed = 0;
+        double p50 = 0, p99 = 0, max = 0, fps = 0;
+
+        // Worst robot for the tail, so one starved robot can't hide behind the others
+        for (KobukiController k : fleet.getRobots()) {
+            Metrics m = k.getMetrics();
+            LatencySnapshot late = m.histogram("control.lateness").snapshot();
+
+            steps += late.getCount();
+            missed += m.counter("control.missedDeadlines").get();
+            p50 = Math.max(p50, late.getP50Micros());
+            p99 = Math.max(p99, late.getP99Micros());
+            max = Math.max(max, late.getMaxMicros());
+            fps += m.gauge("vision.fps").get() / n;
+        }
+
+        long expected = (long) (n * elapsed * 1000 / (KobukiRobot.MIN_UPDATE_PERIOD * 2));
+
+        System.out.printf("%6d %6d/%-7d %7d %10.0fus %10.0fus %10.0fus %8.1f %10.1f%n",
+                n, steps, expected, missed, p50, p99, max, fps, cpu);
+
+        fleet.shutdown();
+    }
+
+    private static long processCpuTime() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+}
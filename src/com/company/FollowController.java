@@ -0,0 +1,126 @@
+package com.company;
+
+// Speed law for keeping a fixed distance behind the person.
+// P is the original law: nudge the speed by a gain times the error each time the error changes.
+// PD sets the speed from the error and its rate; FEED_FORWARD also adds the person's own speed.
+public class FollowController {
+    enum Mode { P, PD, FEED_FORWARD }
+
+    private Mode mode = Mode.P;
+
+    private double range = Parameters.DEFAULTS.getRange(); // mm
+    private double offset = Parameters.DEFAULTS.getOffset(); // mm, manual camera offset
+
+    // P gains: slow down faster than speeding up
+    private double gainAhead = Parameters.DEFAULTS.getGainAhead();
+    private double gainBehind = Parameters.DEFAULTS.getGainBehind();
+
+    // PD gains: mm/s per mm of error, and per mm/s of error rate
+    private double kp = Parameters.DEFAULTS.getKp();
+    private double kd = Parameters.DEFAULTS.getKd();
+
+    private short maxSpeed = Parameters.DEFAULTS.getMaxSpeed(); // mm/s
+
+    private short speed = 300; // mm/s
+    private double distance; // mm
+    private double prevError = 99999999;
+    private int stopFrames = 0;
+
+    // Distance in m; rate (m/s) and target speed (m/s) only matter for PD and FEED_FORWARD
+    public short update(double measured, double rate, double targetSpeed) {
+        distance = measured * 1000 - offset;
+
+        double error = distance - range;
+
+        switch (mode) {
+            case P:
+                if (prevError != error) {
+                    double k = error >= 0 ? gainAhead : gainBehind;
+
+                    speed += (short) Math.round(k * error);
+                }
+                break;
+
+            case PD:
+                speed = clamp(kp * error + kd * rate * 1000);
+                break;
+
+            case FEED_FORWARD:
+                speed = clamp(targetSpeed * 1000 + kp * error + kd * rate * 1000);
+                break;
+        }
+
+        prevError = error;
+
+        // Set max and min speed
+        if (speed > maxSpeed)
+            speed = maxSpeed;
+
+        if (speed < 0)
+            speed = 0;
+
+        if (speed == 0)
+            stopFrames++;
+        else
+            stopFrames = 0;
+
+        return speed;
+    }
+
+    private short clamp(double s) {
+        return (short) Math.round(Math.max(-maxSpeed, Math.min(maxSpeed, s)));
+    }
+
+    public void configure(Parameters p) {
+        range = p.getRange();
+        offset = p.getOffset();
+        gainAhead = p.getGainAhead();
+        gainBehind = p.getGainBehind();
+        kp = p.getKp();
+        kd = p.getKd();
+        maxSpeed = p.getMaxSpeed();
+    }
+
+    public void stop() {
+        speed = 0;
+    }
+
+    public short getSpeed() {
+        return speed;
+    }
+
+    // Last measured distance in mm, after the offset
+    public double getDistance() {
+        return distance;
+    }
+
+    public double getError() {
+        return prevError;
+    }
+
+    // Consecutive updates with the robot stopped
+    public int getStopFrames() {
+        return stopFrames;
+    }
+
+    public void resetStopFrames() {
+        stopFrames = 0;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public void setGains(double kp, double kd) {
+        this.kp = kp;
+        this.kd = kd;
+    }
+
+    public void setRange(double range) {
+        this.range = range;
+    }
+}
@@ -0,0 +1,185 @@
+package com.company;
+
+import org.opencv.core.Mat;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class FrameGrabber {
+    // Set on the ready slot until the consumer takes it
+    private static final int FRESH = 4;
+    private static final int INDEX = 3;
+
+    private final FrameSource source;
+    private volatile Recorder recorder;
+    private final LatencyHistogram captureTime;
+    private final Scheduler scheduler;
+
+    // Triple buffer: capture writes one, consumer reads one, the third holds the newest frame
+    private final Mat[] buffers = { new Mat(), new Mat(), new Mat() };
+    private final AtomicInteger ready = new AtomicInteger(1);
+    private int writing = 0;
+    private int reading = 2;
+
+    // Capture time and sequence number of each buffer, handed over with it
+    private final long[] stamps = new long[3];
+    private final long[] sequences = new long[3];
+
+    private final AtomicLong captured = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    // Each capture runs as a task and queues the next: straight away for sources that wait in read(),
+    // at the due time for scheduled ones, and once the last frame was taken for recordings processed
+    // losslessly. Only sources that wait in read() get a thread of their own; the rest share the scheduler.
+    private volatile boolean running = false;
+    private volatile Scheduler capture = null;
+    private final Runnable captureOne = this::captureOne;
+    private Runnable onFrame = null;
+    private boolean live;
+
+    // CPU the capture tasks used, in ns; -1 when not supported
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private final AtomicLong cpuTime = new AtomicLong(THREADS.isThreadCpuTimeSupported() ? 0 : -1);
+
+    FrameGrabber(FrameSource source, Recorder recorder, Metrics metrics, Scheduler scheduler) {
+        this.source = source;
+        this.recorder = recorder;
+        this.scheduler = scheduler;
+
+        captureTime = metrics.histogram("vision.capture");
+    }
+
+    // onFrame runs in the capture task after each frame is published, and must return quickly
+    public void start(Runnable onFrame) {
+        this.onFrame = onFrame;
+        live = source.isLive();
+        running = true;
+
+        capture = source.getNextFrameTime() == FrameSource.SELF_PACED ? scheduler.dedicated("camera-capture") : scheduler;
+        next();
+    }
+
+    // Synchronized so captures queued by take() and by the last capture never overlap on a shared scheduler
+    private synchronized void captureOne() {
+        if (!running)
+            return;
+
+        long cpu = cpuTime.get() >= 0 ? THREADS.getCurrentThreadCpuTime() : -1;
+        long start = scheduler.nanoTime();
+
+        if (!source.read(buffers[writing])) {
+            // Recordings end; cameras just hiccup
+            if (live)
+                capture.schedule(captureOne, 1, TimeUnit.MILLISECONDS);
+
+            return;
+        }
+
+        long stamp = scheduler.nanoTime();
+        captureTime.record(stamp - start);
+
+        stamps[writing] = stamp;
+        sequences[writing] = captured.incrementAndGet();
+
+        Recorder r = recorder;
+
+        if (r != null)
+            r.frame(stamp, buffers[writing]);
+
+        // Publish the new frame and take back whichever buffer was waiting
+        int prev = ready.getAndSet(writing | FRESH);
+        writing = prev & INDEX;
+
+        // The consumer never saw the frame we just replaced
+        if ((prev & FRESH) != 0)
+            dropped.incrementAndGet();
+
+        onFrame.run();
+
+        if (cpu >= 0)
+            cpuTime.addAndGet(THREADS.getCurrentThreadCpuTime() - cpu);
+
+        // Recorded sources are processed losslessly; take() asks for the next frame
+        if (live)
+            next();
+    }
+
+    private void next() {
+        Scheduler c = capture;
+
+        if (!running || c == null)
+            return;
+
+        long due = source.getNextFrameTime();
+
+        if (due == FrameSource.SELF_PACED)
+            c.execute(captureOne);
+        else
+            c.schedule(captureOne, due - scheduler.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    // The newest frame not taken yet, or null if there is none. The returned Mat belongs to the
+    // caller until the next call.
+    public Mat take() {
+        if (!running || (ready.get() & FRESH) == 0)
+            return null;
+
+        int prev = ready.getAndSet(reading);
+        reading = prev & INDEX;
+
+        if (!live)
+            next();
+
+        return buffers[reading];
+    }
+
+    public void stop() {
+        running = false;
+
+        // Wait for a capture under way to leave read() before the source is released: a dedicated
+        // scheduler is shut down, and a capture on the shared one holds the lock until it is done
+        Scheduler c = capture;
+
+        if (c != null && c != scheduler)
+            c.shutdown();
+
+        synchronized (this) {
+            capture = null;
+        }
+    }
+
+    // True while a frame is waiting to be taken
+    public boolean hasFrame() {
+        return running && (ready.get() & FRESH) != 0;
+    }
+
+    // Clock time at which the frame last returned by take() was captured
+    public long getFrameTime() {
+        return stamps[reading];
+    }
+
+    // Capture sequence number of the frame last returned by take(), starting at 1
+    public long getFrameSequence() {
+        return sequences[reading];
+    }
+
+    public void setRecorder(Recorder recorder) {
+        this.recorder = recorder;
+    }
+
+    // CPU used by captures so far, in ns; -1 when not supported
+    public long getCpuTime() {
+        return cpuTime.get();
+    }
+
+    public long getCaptured() {
+        return captured.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,35 @@
+package com.company;
+
+import org.opencv.core.Mat;
+
+public interface FrameSource {
+    // From getNextFrameTime(): read() itself waits for the next frame
+    long SELF_PACED = Long.MIN_VALUE;
+
+    boolean open();
+
+    // Blocks until the next frame is available; false if none could be read
+    boolean read(Mat frame);
+
+    // Clock time at which the next frame is due, for sources whose read() returns at once and that
+    // are read on a schedule instead, which is what lets them run on virtual time; SELF_PACED for
+    // webcams and other sources that wait in read()
+    default long getNextFrameTime() {
+        return SELF_PACED;
+    }
+
+    int getWidth();
+
+    int getHeight();
+
+    // True when read() hands over the target's four corners, a 4x1 CV_32FC2 Mat that is empty when
+    // it is out of view, instead of an image; the pipeline then skips detection
+    default boolean isGroundTruth() {
+        return false;
+    }
+
+    // Live sources drop frames the pipeline can't keep up with; others are processed losslessly
+    boolean isLive();
+
+    void release();
+}
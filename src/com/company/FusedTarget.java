@@ -0,0 +1,58 @@
+package com.company;
+
+// The person's position in the robot frame, merged from every camera that saw them recently.
+// Immutable, like Observation.
+public final class FusedTarget {
+    static final FusedTarget NONE = new FusedTarget(0, 0, 0, 0, false);
+
+    private final long time;
+    private final double x;
+    private final double y;
+    private final int cameras;
+    private final boolean visible;
+
+    FusedTarget(long time, double x, double y, int cameras, boolean visible) {
+        this.time = time;
+        this.x = x;
+        this.y = y;
+        this.cameras = cameras;
+        this.visible = visible;
+    }
+
+    // Clock capture time of the newest frame that contributed
+    public long getTime() {
+        return time;
+    }
+
+    // m, x forward and y left of the centre between the wheels
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getRange() {
+        return Math.hypot(x, y);
+    }
+
+    // rad, counter-clockwise from straight ahead
+    public double getBearing() {
+        return Math.atan2(y, x);
+    }
+
+    // Cameras whose detections were merged; 0 when nobody saw the target within the window
+    public int getCameras() {
+        return cameras;
+    }
+
+    // Some camera still counts the target as visible, even if it was missing from the last frames
+    public boolean isVisible() {
+        return visible;
+    }
+
+    public boolean isDetected() {
+        return cameras > 0;
+    }
+}
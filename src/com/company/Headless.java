@@ -0,0 +1,270 @@
+package com.company;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+// Runs the camera pipeline and a task without JavaFX: no toolkit startup, FX thread or preview
+// drawing. Options come from a properties file with the same names, the command line winning, e.g.
+//   Headless --port /dev/ttyUSB0 --task 1 --preview http:8080
+//   Headless --config headless.properties --replay run.krec --fast
+//   Headless --simulate --task 2
+//   Headless --simulate --virtual --task 2 --duration 45
+//   Headless --simulate --virtual --ground-truth --task 2 --duration 45
+public class Headless {
+    private static final String USAGE = "Usage: Headless [--config <file>] [--port <serial port> | --replay <file.krec> [--fast] | --simulate [--ground-truth]] [--virtual] [--task 1|2]"
+            + " [--preview none|file:<path>|http:<port>] [--preview-fps <fps>] [--event-driven] [--predictive] [--duty-cycle] [--parallel-threshold] [--pyramid-level <n>]"
+            + " [--follow-mode P|PD|FEED_FORWARD] [--duration <s>] [--cameras <device or file.krec>@x,y,yaw[,fov];...] [--telemetry <file.ktel>]";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Properties options;
+        PreviewSink preview;
+        int pyramidLevel;
+
+        try {
+            options = parse(args);
+
+            // Virtual time only suits sources that never wait in read(); a webcam or the serial port
+            // would hold up every other event, or never let the clock advance at all
+            if (flag(options, "virtual") && !options.containsKey("replay") && !flag(options, "simulate"))
+                throw new IllegalArgumentException("--virtual needs --replay or --simulate");
+
+            if (flag(options, "ground-truth") && !flag(options, "simulate"))
+                throw new IllegalArgumentException("--ground-truth needs --simulate");
+
+            pyramidLevel = Integer.parseInt(options.getProperty("pyramid-level", "0"));
+
+            if (pyramidLevel < 0)
+                throw new IllegalArgumentException("--pyramid-level must be 0 or more");
+
+            double previewFps = Double.parseDouble(options.getProperty("preview-fps", "2"));
+
+            if (!(previewFps > 0))
+                throw new IllegalArgumentException("--preview-fps must be positive");
+
+            preview = preview(options.getProperty("preview", "none"), previewFps);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println(USAGE);
+            return;
+        }
+
+        // Replays drive the encoders from the recording, simulations a software Kobuki following
+        // the task's scenario; otherwise the real robot
+        ReplaySource replay = null;
+        SimulatedKobuki simulated = null;
+        FrameSource simulatedCamera = null;
+        Robot robot;
+        int task = Integer.parseInt(options.getProperty("task", "1"));
+
+        // Replays and simulations can run on virtual time, with every thread's work as events on one
+        // scheduler: as fast as the CPU allows, and the same every time
+        VirtualScheduler virtual = flag(options, "virtual") ? new VirtualScheduler() : null;
+        Clock clock = virtual != null ? virtual : Clock.SYSTEM;
+
+        if (options.containsKey("replay")) {
+            replay = virtual != null ? new ReplaySource(options.getProperty("replay"), clock) : new ReplaySource(options.getProperty("replay"), !flag(options, "fast"));
+            robot = new ReplayRobot(replay);
+        } else if (flag(options, "simulate")) {
+            long now = clock.nanoTime();
+            SimulatedPerson person = task == 2 ? SimulatedPerson.corner(now) : SimulatedPerson.straight(now);
+
+            simulated = new SimulatedKobuki(clock);
+            SyntheticCameraSource synthetic = new SyntheticCameraSource(simulated, person, CameraMount.FRONT, 640, 480, 30, clock);
+            synthetic.setGroundTruth(flag(options, "ground-truth"));
+            simulatedCamera = synthetic;
+            robot = simulated;
+        } else {
+            robot = new SerialRobot(options.getProperty("port", "COM3"));
+        }
+
+        KobukiController k = new KobukiController("kobuki", robot, preview, virtual);
+        KobukiCamera camera = k.getCamera();
+
+        if (replay != null)
+            camera.setSource(replay);
+        else if (simulatedCamera != null)
+            camera.setSource(simulatedCamera);
+
+        // Side cameras, each on its own pipeline: a device number or a recording, and its mount
+        for (String spec : options.getProperty("cameras", "").split(";")) {
+            if (spec.trim().isEmpty())
+                continue;
+
+            int at = spec.lastIndexOf('@');
+
+            if (at < 0) {
+                System.out.println("Expected <device or file.krec>@x,y,yaw[,fov]: " + spec);
+                k.shutdown();
+                return;
+            }
+
+            String name = spec.substring(0, at).trim();
+
+            if (virtual != null && name.matches("\\d+")) {
+                System.out.println("A webcam can't run on virtual time: " + spec);
+                k.shutdown();
+                return;
+            }
+
+            FrameSource source = name.matches("\\d+") ? new CameraSource(Integer.parseInt(name))
+                    : virtual != null ? new ReplaySource(name, clock) : new ReplaySource(name, !flag(options, "fast"));
+
+            k.addCamera(source, CameraMount.parse(spec.substring(at + 1)));
+        }
+
+        k.setEventDriven(flag(options, "event-driven"));
+        k.setPredictive(flag(options, "predictive"));
+        k.setFollowMode(FollowController.Mode.valueOf(options.getProperty("follow-mode", "P")));
+        camera.setDutyCycling(flag(options, "duty-cycle"));
+
+        for (int i = 0; i < k.getCameras().size(); i++) {
+            k.getCameras().getCamera(i).setParallelThreshold(flag(options, "parallel-threshold"));
+            k.getCameras().getCamera(i).setPyramidLevel(pyramidLevel);
+        }
+
+        if (options.containsKey("telemetry"))
+            k.startTelemetry(options.getProperty("telemetry"));
+
+        if (virtual != null) {
+            runVirtual(k, virtual, task, replay, simulated, Double.parseDouble(options.getProperty("duration", "45")));
+            return;
+        }
+
+        System.out.println("Started in " + ManagementFactory.getRuntimeMXBean().getUptime() + " ms");
+
+        Thread firstFrame = new Thread(() -> {
+            while (camera.getProcessedFrames() == 0)
+                sleep(1);
+
+            System.out.println("First frame after " + ManagementFactory.getRuntimeMXBean().getUptime() + " ms");
+        }, "first-frame");
+        firstFrame.setDaemon(true);
+        firstFrame.start();
+
+        // Steady-state cost from here on, to compare with the GUI
+        long start = System.nanoTime();
+        long cpuStart = processCpuTime();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.print(k.getMetrics().getSummary());
+            System.out.printf("CPU: %.1f ms/s over %.1f s%n", (processCpuTime() - cpuStart) / 1e6 / seconds, seconds);
+
+            k.shutdown();
+        }));
+
+        k.startTask(task);
+
+        double duration = Double.parseDouble(options.getProperty("duration", "0"));
+
+        if (replay != null) {
+            while (!replay.isFinished())
+                Thread.sleep(10);
+        } else if (duration > 0) {
+            Thread.sleep((long) (duration * 1000));
+        } else {
+            // Until interrupted; the shutdown hook stops the robot
+            Thread.currentThread().join();
+        }
+
+        System.exit(0);
+    }
+
+    // Runs the task on virtual time until the replay ends or for the given simulated seconds, then
+    // prints where the robot ended up; with the same options the result is identical every run
+    private static void runVirtual(KobukiController k, VirtualScheduler virtual, int task, ReplaySource replay,
+                                   SimulatedKobuki simulated, double duration) {
+        k.getMetrics().stopSummaryDump();
+
+        long start = System.nanoTime();
+        long end = virtual.nanoTime() + (long) (duration * TimeUnit.SECONDS.toNanos(1));
+
+        k.startTask(task);
+
+        while (replay != null ? !replay.isFinished() : virtual.nanoTime() < end)
+            virtual.runFor(10, TimeUnit.MILLISECONDS);
+
+        double simulatedSeconds = virtual.nanoTime() / 1e9;
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("Simulated %.1f s in %.3f s (%.0fx real time), %d events, %d frames%n", simulatedSeconds, seconds,
+                simulatedSeconds / seconds, virtual.getExecuted(), k.getCamera().getProcessedFrames());
+
+        Pose p = k.getPose();
+        System.out.printf("Odometry: x %.4f m, y %.4f m, heading %.2f deg, travelled %.4f m%n",
+                p.getX(), p.getY(), Math.toDegrees(p.getHeading()), p.getTravelled());
+
+        if (simulated != null) {
+            Pose t = simulated.getPose();
+            System.out.printf("True pose: x %.4f m, y %.4f m, heading %.2f deg; %d commands%n",
+                    t.getX(), t.getY(), Math.toDegrees(t.getHeading()), simulated.getCommands());
+        }
+
+        k.shutdown();
+        System.exit(0);
+    }
+
+    // Command-line options over the --config file; a flag without a value is "true"
+    private static Properties parse(String[] args) throws IOException {
+        Properties cli = new Properties();
+
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--"))
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+
+            String name = args[i].substring(2);
+
+            if (i + 1 < args.length && !args[i + 1].startsWith("--"))
+                cli.setProperty(name, args[++i]);
+            else
+                cli.setProperty(name, "true");
+        }
+
+        Properties options = new Properties();
+
+        if (cli.containsKey("config")) {
+            try (Reader r = Files.newBufferedReader(Paths.get(cli.getProperty("config")))) {
+                options.load(r);
+            }
+        }
+
+        options.putAll(cli);
+
+        return options;
+    }
+
+    private static PreviewSink preview(String spec, double fps) throws IOException {
+        if (spec.equals("none"))
+            return PreviewSink.NONE;
+
+        if (spec.startsWith("file:"))
+            return new FilePreviewSink(Paths.get(spec.substring(5)), fps);
+
+        if (spec.startsWith("http:"))
+            return new NetworkPreviewSink(Integer.parseInt(spec.substring(5)), fps);
+
+        throw new IllegalArgumentException("Unknown preview " + spec);
+    }
+
+    private static boolean flag(Properties options, String name) {
+        return Boolean.parseBoolean(options.getProperty(name, "false"));
+    }
+
+    private static long processCpuTime() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+
+    private static void sleep(int milli) {
+        try {
+            Thread.sleep(milli);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+}
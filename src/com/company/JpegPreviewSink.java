@@ -0,0 +1,49 @@
+package com.company;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.util.concurrent.TimeUnit;
+
+// Base for headless sinks: encodes a JPEG of the current frame a few times a second on the
+// processing step and hands it on. Every other frame costs a clock read.
+abstract class JpegPreviewSink implements PreviewSink {
+    static { System.loadLibrary(Core.NATIVE_LIBRARY_NAME); }
+
+    private final MatOfByte encoded = new MatOfByte();
+    private final long minInterval;
+    private long lastFrame;
+
+    JpegPreviewSink(double fps) {
+        // Zero would make the interval infinite, and the first frame's due time overflow
+        if (!(fps > 0))
+            throw new IllegalArgumentException("fps must be positive");
+
+        minInterval = (long) (TimeUnit.SECONDS.toNanos(1) / fps);
+        lastFrame = System.nanoTime() - minInterval;
+    }
+
+    public boolean show(Mat m) {
+        long now = System.nanoTime();
+
+        if (now - lastFrame < minInterval)
+            return false;
+
+        lastFrame = now;
+
+        if (!Imgcodecs.imencode(".jpg", m, encoded))
+            return false;
+
+        publish(encoded.toArray());
+
+        return true;
+    }
+
+    public void clear() {
+    }
+
+    // Called with a fresh array that the sink may keep
+    protected abstract void publish(byte[] jpeg);
+}
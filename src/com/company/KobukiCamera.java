@@ -1,78 +1,255 @@
 package com.company;
 
 import org.opencv.core.*;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
-import org.opencv.videoio.VideoCapture;
 
-import javafx.application.Platform;
-import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
-import javafx.scene.control.TextField;
-
-import java.io.ByteArrayInputStream;
-import java.util.ArrayList;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.Arrays;
-import java.util.List;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 public class KobukiCamera {
     static { System.loadLibrary(Core.NATIVE_LIBRARY_NAME); }
 
-    private VideoCapture video = null;
-
-    final private ImageView im;
-
-    private ScheduledFuture cameraTask = null;
-    final private ScheduledExecutorService pool;
-
-    private double distance = 1;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    // Where frames come from; the webcam unless replaced for replays
+    private FrameSource source = new CameraSource(1);
+    private volatile Recorder recorder = null;
+    private volatile TelemetryLog telemetry = null;
+
+    // Display output; PreviewSink.NONE when nobody is watching
+    final private PreviewSink preview;
+    private final LatencyHistogram previewTime;
+
+    // Processing steps run on this; capture too, unless the source waits in read()
+    final private Scheduler scheduler;
+
+    private final Metrics metrics;
+    private final LatencyHistogram distanceTime;
+    private final LatencyHistogram detectionLatency;
+
+    // Achieved rate and CPU use of the capture and processing tasks, updated every second
+    private final Metrics.Gauge fps;
+    private final Metrics.Gauge cpu;
+    private final Metrics.Gauge reducedGauge;
+
+    // Backs off to a lower rate and resolution while the target holds still
+    private final DutyCycler cycler = new DutyCycler();
+    private volatile boolean dutyCycling = false;
+    private volatile int basePyramidLevel = 0;
+    private volatile boolean reduced = false;
+
+    // Capture publishes frames; processing consumes only the newest one
+    private volatile FrameGrabber grabber = null;
+    private volatile int frameWidth = 0;
+    private volatile boolean processing = false;
+    private final AtomicLong processed = new AtomicLong();
+
+    // Set from the moment a processing step is queued until it is done, so steps never overlap on the
+    // shared scheduler and frames arriving in between don't queue more
+    private final AtomicBoolean queued = new AtomicBoolean();
+    private final Runnable processStep = this::processStep;
+    private final ReentrantLock stepLock = new ReentrantLock();
+    private Consumer<Mat> task = null;
+
+    // Per-second rate window, processing CPU, and when the next frame may be processed; only touched by the step
+    private long windowStart, windowFrames, windowCpu;
+    private long processCpu;
+    private long nextProcess;
+
+    // Latest observation, replaced as a whole once per processed frame
+    private final AtomicReference<Observation> observation = new AtomicReference<>(Observation.NONE);
+    private volatile Consumer<Observation> listener = null;
+
+    // Only touched by processing steps
     private boolean visible = true;
     private int notVisibleFrames = 0;
-    public boolean visibleThisFrame = true;
+
+    // Frame being processed, stamped at capture
+    private long frameTime = 0;
+    private long frameSequence = 0;
 
     private int calibFrames;
     private double[] calibAvg;
     private final int calibMax = 100;
 
-    public TextField min;
-    public TextField max;
-
     // Cached Mats
-    final Mat m = new Mat();
+    final Mat calibHsv = new Mat();
+
+    // Per-pipeline buffers for the square search
+    private final SquareDetector detector = new SquareDetector();
+
+    // Set when the source hands over the square's corners instead of images, which are copied here
+    private boolean groundTruth = false;
+    private final MatOfPoint2f truth = new MatOfPoint2f();
 
-    KobukiCamera(ImageView im, ScheduledExecutorService p) {
-        // Take reference to pool
-        pool = p;
+    // Tunables; the snapshot in use is only swapped when the registry publishes a new one
+    private final ParameterRegistry parameters;
+    private Parameters applied = null;
 
-        // Store ref to ImageView for video display
-        this.im = im;
+    // Threshold scalars, filled from the snapshot in use
+    private final Scalar minGreen = new Scalar(0, 0, 0);
+    private final Scalar maxGreen = new Scalar(0, 0, 0);
+
+    KobukiCamera(PreviewSink preview, Scheduler s) {
+        this(preview, s, new Metrics(), new ParameterRegistry());
+    }
+
+    KobukiCamera(PreviewSink preview, Scheduler s, Metrics metrics) {
+        this(preview, s, metrics, new ParameterRegistry());
+    }
+
+    KobukiCamera(PreviewSink preview, Scheduler s, Metrics metrics, ParameterRegistry parameters) {
+        scheduler = s;
+
+        this.parameters = parameters;
+        apply(parameters.get());
+
+        this.metrics = metrics;
+        detector.setMetrics(metrics);
+        distanceTime = metrics.histogram("vision.distance");
+        detectionLatency = metrics.histogram("latency.captureToDetection");
+
+        fps = metrics.gauge("vision.fps");
+        cpu = metrics.gauge("vision.cpuMillisPerSecond");
+        reducedGauge = metrics.gauge("vision.reduced");
+
+        this.preview = preview;
+        previewTime = metrics.histogram("vision.preview");
     }
 
     private boolean setup() {
         stop();
 
-        video = new VideoCapture();
-        video.open(1);
+        if (source.open()) {
+            // Size the buffers to the capture resolution up front
+            frameWidth = source.getWidth();
+            groundTruth = source.isGroundTruth();
+            detector.allocate(frameWidth, source.getHeight());
+            detector.getTracker().reset();
+
+            processed.set(0);
+
+            observation.set(Observation.NONE);
+            visible = true;
+            notVisibleFrames = 0;
+
+            cycler.reset();
+            reduced = false;
+            reducedGauge.set(0);
+            detector.setPyramidLevel(basePyramidLevel);
+            grabber = new FrameGrabber(source, recorder, metrics, scheduler);
 
-        if (video.isOpened())
             return true;
+        }
         else
             System.out.println("Failed to start camera!");
 
         return false;
     }
 
+    private void process(Consumer<Mat> task) {
+        this.task = task;
+
+        windowStart = scheduler.nanoTime();
+        windowFrames = 0;
+        windowCpu = -1;
+        processCpu = THREADS.isThreadCpuTimeSupported() ? 0 : -1;
+        nextProcess = windowStart;
+
+        processing = true;
+
+        // Each published frame queues a processing step
+        grabber.start(() -> queue(0));
+    }
+
+    private void processStep() {
+        final FrameGrabber g = grabber;
+
+        if (!processing || g == null) {
+            queued.set(false);
+            return;
+        }
+
+        long start = scheduler.nanoTime();
+
+        // At a reduced rate the frames in between are left to the grabber, which drops them
+        if (start < nextProcess) {
+            scheduler.schedule(processStep, nextProcess - start, TimeUnit.NANOSECONDS);
+            return;
+        }
+
+        stepLock.lock();
+
+        try {
+            if (processing)
+                step(g, start);
+        } finally {
+            stepLock.unlock();
+        }
+
+        // Frames published during the step could not queue another one
+        queued.set(false);
+
+        if (g.hasFrame())
+            queue(0);
+    }
+
+    private void step(FrameGrabber g, long start) {
+        Mat m = g.take();
+
+        if (m == null)
+            return;
+
+        if (windowCpu < 0)
+            windowCpu = cpuTime(g);
+
+        frameTime = g.getFrameTime();
+        frameSequence = g.getFrameSequence();
+
+        long cpuStart = processCpu >= 0 ? THREADS.getCurrentThreadCpuTime() : -1;
+
+        task.accept(m);
+        processed.incrementAndGet();
+        windowFrames++;
+
+        if (cpuStart >= 0)
+            processCpu += THREADS.getCurrentThreadCpuTime() - cpuStart;
+
+        // Once a second, report the achieved rate and the CPU the vision threads used
+        if (start - windowStart >= 1_000_000_000L) {
+            long c = cpuTime(g);
+            double seconds = (start - windowStart) / 1e9;
+
+            fps.set(windowFrames / seconds);
+
+            if (c >= 0 && windowCpu >= 0)
+                cpu.set((c - windowCpu) / 1e6 / seconds);
+
+            windowStart = start;
+            windowFrames = 0;
+            windowCpu = c;
+        }
+
+        nextProcess = start + (reduced ? cycler.getInterval() : 0);
+    }
+
+    private void queue(long delay) {
+        if (processing && queued.compareAndSet(false, true))
+            scheduler.schedule(processStep, delay, TimeUnit.NANOSECONDS);
+    }
+
     public void viewCamera() {
         if (!setup())
             return;
 
-        cameraTask = pool.scheduleAtFixedRate(() -> {
-            video.read(m);
-            findSquare(m);
-        }, 0, 33, TimeUnit.MILLISECONDS);
+        process(m -> findSquare(m));
     }
 
     public void calibrate() {
@@ -83,7 +260,7 @@ public class KobukiCamera {
         calibAvg = new double[3];
 
         // Task prints out image values
-        cameraTask = pool.scheduleAtFixedRate(() -> {
+        process(m -> {
             if (calibFrames == 50) {
                 System.out.println("Done");
 
@@ -93,25 +270,27 @@ public class KobukiCamera {
 
                 System.out.println("Average color: " + Arrays.toString(calibAvg));
 
-                cameraTask.cancel(true);
+                processing = false;
+                return;
             }
 
-            video.read(m);
             showImage(m);
 
-            Mat hsv = new Mat();
-            Imgproc.cvtColor(m, hsv, Imgproc.COLOR_RGB2HSV);
+            Imgproc.cvtColor(m, calibHsv, Imgproc.COLOR_RGB2HSV);
 
-            double[] avg = Core.mean(hsv).val;
+            double[] avg = Core.mean(calibHsv).val;
 
             calibAvg[0] += avg[0];
             calibAvg[1] += avg[1];
             calibAvg[2] += avg[2];
 
-            System.out.println("H = " + avg[0] + ", S = " + avg[1] + ", V = " + avg[2]);
+            TelemetryLog t = telemetry;
+
+            if (t != null)
+                t.calibration(avg[0], avg[1], avg[2]);
 
             calibFrames++;
-        }, 0, 33, TimeUnit.MICROSECONDS);;
+        });
     }
 
     public void start(final int task) {
@@ -119,165 +298,254 @@ public class KobukiCamera {
             return;
 
         if (task == 1)
-            cameraTask = pool.scheduleAtFixedRate(() -> {
-                // Read a frame
-                if (video.read(m)) {
-                    // Find the square
-                    MatOfPoint s = findSquare(m);
-
-                    // Ensure that it's visible for at least 30 frames, then compute distance
-                    if (s == null) {
-                        if (notVisibleFrames <= 90)
-                            notVisibleFrames++;
-                        else
-                            visible = false;
-                    }
-                    else {
-                        computeDistance(s);
-                        visible = true;
-                        notVisibleFrames = 0;
-                    }
+            process(m -> {
+                // Find the square
+                MatOfPoint2f s = findSquare(m);
+
+                // Ensure that it's visible for at least 30 frames, then compute distance
+                if (s == null) {
+                    if (notVisibleFrames <= applied.getVisibilityTimeout())
+                        notVisibleFrames++;
+                    else
+                        visible = false;
                 }
-            }, 0, 33, TimeUnit.MILLISECONDS);
+                else {
+                    visible = true;
+                    notVisibleFrames = 0;
+                }
+
+                publish(s);
+            });
         else if (task == 2)
-            cameraTask = pool.scheduleAtFixedRate(() -> {
-                // Read a frame
-                if (video.read(m)) {
-                    // Find the square
-                    MatOfPoint s = findSquare(m);
-
-                    // Ensure that it's visible, then compute distance
-                    if (s == null) {
-                        visibleThisFrame = false;
-                        if (notVisibleFrames <= 90)
-                            notVisibleFrames++;
-                        else
-                            visible = false;
-                    }
-
-                    else {
-                        visibleThisFrame = true;
-                        computeDistance(s);
-                        visible = true;
-                    }
+            process(m -> {
+                // Find the square
+                MatOfPoint2f s = findSquare(m);
+
+                // Ensure that it's visible, then compute distance
+                if (s == null) {
+                    if (notVisibleFrames <= applied.getVisibilityTimeout())
+                        notVisibleFrames++;
+                    else
+                        visible = false;
                 }
-            }, 0, 33, TimeUnit.MILLISECONDS);
+
+                else
+                    visible = true;
+
+                publish(s);
+            });
     }
 
     public void stop() {
-        // Cancel the task
-        if (cameraTask != null && !cameraTask.isCancelled())
-            cameraTask.cancel(true);
+        // Stop processing first, and wait out a step under way, so nothing touches the frame buffers afterwards
+        processing = false;
+
+        stepLock.lock();
+        stepLock.unlock();
+
+        queued.set(false);
+
+        // Stop capture before the device is released
+        if (grabber != null) {
+            grabber.stop();
+            grabber = null;
+        }
 
         // Close video stream
-        if (video != null && video.isOpened())
-            video.release();
+        source.release();
 
-        im.setImage(null);
+        preview.clear();
     }
 
-    private MatOfPoint findSquare(Mat m) {
-        // HSV
-        final Mat hsv = new Mat();
-        Imgproc.cvtColor(m, hsv, Imgproc.COLOR_RGB2HSV);
+    private MatOfPoint2f findSquare(Mat m) {
+        if (groundTruth) {
+            if (m.empty())
+                return null;
+
+            m.copyTo(truth);
+            return truth;
+        }
 
-        // Keep only greens
-        Mat thresh = new Mat();
+        // One volatile read per frame; nothing to do unless the parameters changed
+        Parameters p = parameters.get();
 
-        Scalar minGreen = makeScalar(min);
-        Scalar maxGreen = makeScalar(max);
+        if (p != applied)
+            apply(p);
 
-        Core.inRange(hsv, minGreen, maxGreen, thresh);
+        MatOfPoint2f s = detector.find(m, minGreen, maxGreen);
 
-        // Morphological open and close for noise removal
-        Mat strEl = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(15, 15));
-        Imgproc.morphologyEx(thresh, thresh, Imgproc.MORPH_CLOSE, strEl);
-        Imgproc.morphologyEx(thresh, thresh, Imgproc.MORPH_OPEN, strEl);
+        showImage(detector.getMask());
 
-        showImage(thresh);
+        return s;
+    }
 
-        // Find contours
-        List<MatOfPoint> contours = new ArrayList<>();
-        Imgproc.findContours(thresh.clone(), contours, new Mat(), Imgproc.RETR_TREE, Imgproc.CHAIN_APPROX_SIMPLE);
+    private void showImage(Mat m) {
+        long start = System.nanoTime();
 
-        MatOfPoint2f approx = new MatOfPoint2f();
+        if (preview.show(m))
+            previewTime.recordSince(start);
+    }
 
-        // Store found squares
-        List<MatOfPoint> results = new ArrayList<>();
+    // Publishes this frame's observation; distance and corners only change when the square was found
+    private void publish(MatOfPoint2f s) {
+        if (s == null) {
+            deliver(observation.get().next(frameSequence, visible, false));
+            return;
+        }
 
-        // Track largest contour
-        double maxArea = 0;
+        long start = System.nanoTime();
+        double distance = applied.areaToDistance(Imgproc.contourArea(s));
+        distanceTime.recordSince(start);
 
-        for (MatOfPoint contour: contours) {
-            double area = Imgproc.contourArea(contour);
+        // A fresh Observation and corner array per detection is the one allocation the pipeline keeps;
+        // recycling them would let a slow reader see one frame's fields mixed with another's
+        float[] corners = new float[8];
+        s.get(0, 0, corners);
 
-            if (area > maxArea)
-                maxArea = area;
-        }
+        // Trace the measurement back to the frame it came from
+        long now = scheduler.nanoTime();
+        detectionLatency.record(now - frameTime);
 
-        for (MatOfPoint contour: contours) {
-            // Approximate the polygon
-            Imgproc.approxPolyDP(new MatOfPoint2f(contour.toArray()), approx, Imgproc.arcLength(new MatOfPoint2f(contour.toArray()), true) * 0.01, true);
+        deliver(new Observation(frameSequence, distance, corners, visible, true, frameSequence, frameTime, now));
+    }
 
-            // Convert approximation
-            MatOfPoint a = new MatOfPoint(approx.toArray());
+    private void deliver(Observation o) {
+        observation.set(o);
 
-            // Skip if non-convex and less than 0.7*max area
-            if (Imgproc.isContourConvex(a) && Imgproc.contourArea(contour) >= maxArea) {
-                List<Point> points = approx.toList();
+        boolean r = dutyCycling && cycler.update(o);
 
-                if (points.size() == 4) {
-                    // If square, add to results
-                    results.add(a);
-                }
-            }
+        if (r != reduced) {
+            reduced = r;
+            detector.setPyramidLevel(basePyramidLevel + (r ? cycler.getExtraLevels() : 0));
+            reducedGauge.set(r ? 1 : 0);
         }
 
-        if (results.size() == 0)
-            return null;
+        Consumer<Observation> l = listener;
 
-        return results.get(0);
+        if (l != null)
+            l.accept(o);
     }
 
-    private void showImage(Mat m) {
-        MatOfByte mb = new MatOfByte();
-
-        Imgcodecs.imencode(".bmp", m, mb);
-        Image image = new Image(new ByteArrayInputStream(mb.toArray()));
+    // CPU time of the processing steps plus the captures, in ns; -1 when not supported.
+    // Counted per task, since the shared scheduler runs them on whichever thread is free.
+    private long cpuTime(FrameGrabber g) {
+        long capture = g.getCpuTime();
 
-        Platform.runLater(() -> im.setImage(image));
+        return processCpu < 0 || capture < 0 ? -1 : processCpu + capture;
     }
 
-    private void computeDistance(MatOfPoint s) {
-        double area = Imgproc.contourArea(s);
-        area /= 1000;
+    private void apply(Parameters p) {
+        p.getMinHsv(minGreen);
+        p.getMaxHsv(maxGreen);
 
-        // Derived area-distance relation for 10x10 cm square
-        distance = 1.6275*Math.pow(area, -0.517);
-    }
+        detector.setKernelSize(p.getKernelSize());
+        detector.setEpsilon(p.getEpsilon());
 
-    private static Scalar makeScalar(TextField t) {
-        int[] v = new int[3];
-        int i;
+        applied = p;
+    }
 
-        try {
-            String[] s = t.getText().split(",");
+    // With the default fit; the camera itself uses the live parameters
+    static double areaToDistance(double area) {
+        return Parameters.DEFAULTS.areaToDistance(area);
+    }
 
-            for (i = 0; i < 3; i++)
-                v[i] = Integer.parseInt(s[i]);
+    // Consistent view of the latest frame; compare sequence numbers to tell whether it is new
+    public Observation getObservation() {
+        return observation.get();
+    }
 
-            return new Scalar(v[0], v[1], v[2]);
-        } catch (Exception e) {
-            System.out.println("Parsing error for makeScalar!");
-            return new Scalar(0, 0, 0);
-        }
+    // Called in the processing step after each observation is published; must return quickly
+    public void setListener(Consumer<Observation> listener) {
+        this.listener = listener;
     }
 
     public boolean isVisible() {
-        return visible;
+        return observation.get().isVisible();
     }
 
     public double getDistance() {
-        return distance;
+        return observation.get().getDistance();
+    }
+
+    public ParameterRegistry getParameters() {
+        return parameters;
+    }
+
+    // Takes effect the next time the camera is started
+    public void setSource(FrameSource source) {
+        stop();
+        this.source = source;
+    }
+
+    // Records every captured frame while set
+    public void setRecorder(Recorder recorder) {
+        this.recorder = recorder;
+
+        FrameGrabber g = grabber;
+
+        if (g != null)
+            g.setRecorder(recorder);
+    }
+
+    // Logs each calibration frame's mean colour while set
+    public void setTelemetry(TelemetryLog telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    public void setTracking(boolean tracking) {
+        detector.setTracking(tracking);
+    }
+
+    // Run the search on a downscaled frame (0 = full resolution) and refine corners at full resolution
+    public void setPyramidLevel(int level) {
+        basePyramidLevel = level;
+        detector.setPyramidLevel(level + (reduced ? cycler.getExtraLevels() : 0));
+    }
+
+    // Drop to a lower rate and an extra pyramid level while the target holds still
+    public void setDutyCycling(boolean enabled) {
+        dutyCycling = enabled;
+    }
+
+    public DutyCycler getDutyCycler() {
+        return cycler;
+    }
+
+    public boolean isReducedRate() {
+        return reduced;
+    }
+
+    public double getFps() {
+        return fps.get();
+    }
+
+    public double getCpuMillisPerSecond() {
+        return cpu.get();
+    }
+
+    // Split thresholding and morphology into bands on a ForkJoin pool
+    public void setParallelThreshold(boolean parallel) {
+        detector.setParallel(parallel);
+    }
+
+    // px, of the frames corners are given in
+    public int getFrameWidth() {
+        return frameWidth;
+    }
+
+    public PreviewSink getPreview() {
+        return preview;
+    }
+
+    public long getCapturedFrames() {
+        return grabber != null ? grabber.getCaptured() : 0;
+    }
+
+    public long getProcessedFrames() {
+        return processed.get();
+    }
+
+    public long getDroppedFrames() {
+        return grabber != null ? grabber.getDropped() : 0;
     }
 }
@@ -2,56 +2,187 @@ package com.company;
 
 import edu.ycp.robotics.KobukiRobot;
 
-import javafx.scene.image.ImageView;
-import javafx.scene.image.Image;
-
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class KobukiController {
-    private final KobukiRobot k;
-    private final ScheduledExecutorService pool;
+    private final CommandWriter k;
+    private final RecordingRobot recordingRobot;
+    private Recorder recorder = null;
+
+    // Binary per-tick trace; null unless started
+    private volatile TelemetryLog telemetry = null;
+    private volatile short commandSpeed = 0, commandRadius = 0; // last command posted
+    private final String name;
 
-    private ScheduledFuture currentTask;
-    private ScheduledFuture rotateTask;
+    // Every timed task runs on this, and every wait and age is measured on its clock
+    private final Scheduler pool;
+    private final boolean ownsPool;
+
+    private Scheduler.Task currentTask;
+    private Scheduler.Task rotateTask;
 
     private KobukiCamera camera;
 
-    private ImageView faceView;
+    // The front camera plus any side cameras, merged into one target position in the robot frame
+    private final CameraFusion cameras;
+    private final List<Metrics> cameraMetrics = new ArrayList<>();
+
+    // Latency histograms, published over JMX under the robot's name
+    private final Metrics metrics;
+    private final LatencyHistogram taskOneTime;
+    private final LatencyHistogram taskTwoTime;
+
+    // Age of the measurement behind each follow command
+    private final LatencyHistogram detectionToCommand;
+    private final LatencyHistogram captureToCommand;
+    private final AtomicLong staleMeasurements;
+    private final AtomicLong repeatedMeasurements;
+    private long lastMeasurement = 0;
+
+    // How late each polled control step started, and steps dropped for starting a whole period late
+    private final LatencyHistogram controlLateness;
+    private final AtomicLong missedDeadlines;
+    private long nextTick = 0; // ns, only touched by the polled step
+
+    // Event-driven mode: each new observation runs a control step instead of a fixed-rate poll
+    private volatile boolean eventDriven = false;
+    private volatile Runnable step = null;
+    private volatile long lastCommand = 0; // clock time of the last command posted
+    private final ReentrantLock stepLock = new ReentrantLock();
+    private final AtomicBoolean deferred = new AtomicBoolean();
+    private final Runnable eventStep = this::runStep;
+    private final Runnable deferredStep = () -> {
+        deferred.set(false);
+        runStep();
+    };
+    private final AtomicLong deferredSteps;
+    private final AtomicLong keepAliveSteps;
+    private final AtomicLong skippedSteps;
+
+    // Camera preview and face; PreviewSink.NONE when running headless
+    private final PreviewSink preview;
 
     // For Task 1 and 2
-    private double distance;
-    private short speed = 300; // mm/s
+    private final FollowController follower = new FollowController();
+
+    // Tunables shared with the camera; settable from the UI, kobuki.properties and JMX
+    private final ParameterRegistry parameters = new ParameterRegistry();
+    private Parameters followParameters = null;
     private short radius = 0;
-    private double prevError = 99999999;
-    private int stopFrames = 0;
-    private int startTick;
-    private boolean looking = false;
-    private boolean found = false;
 
-    private int rotateCount = 0;
+    // Follow on the estimator's prediction for the moment the command is sent, rather than the raw distance
+    private volatile boolean predictive = false;
+    private final TargetEstimator estimator = new TargetEstimator();
+
+    // Pose from both wheel encoders, sampled at the Kobuki's feedback rate
+    private final Odometry odometry;
+
+    // Travel and turn goals stop the robot from the odometry task on the sample they are reached
+    private Odometry.Goal goal = null;
+    private final Runnable haltNow = this::halt;
+    private double lostAt = 0; // m travelled when the person disappeared
+
+    // Task 2 runs as a state machine advanced once per control tick
+    private enum TaskTwoState { FOLLOW, OVERSHOOT, ROTATE_LEFT, SCAN_LEFT, ROTATE_RIGHT, SCAN_RIGHT, TURN_TO_TARGET, APPROACH, LOST }
+
+    private TaskTwoState state = TaskTwoState.FOLLOW;
+    private long stateStart = 0; // ns
+    private boolean wasVisible = true;
+    private double lostDistance = 0; // m
+    private double approachDistance = 0; // m
+    private double turnDirection = 0; // +1 counter-clockwise, -1 clockwise
+
+    // A side camera sighting further off-axis than this turns the robot toward it
+    private final double SIDE_BEARING = Math.toRadians(25);
+
+    private long rotateStart = 0; // ns
 
-    private final short TASK_1_RANGE = 2000; // Distance in mm
     private final short TASK_2_RANGE = 2; // in m
 
-    private final double TICKS_PER_METER = 11724.4165803;
-    private final int MAX_TICKS = 65535;
+    // Time the camera gets to come up before a task starts
+    private final long CAMERA_STARTUP = 1000; // ms
 
-    KobukiController(String port, ImageView faceView, ImageView cameraView) {
-        // Setup thread pool
-        // Responsible for movement, input gathering, task execution, and camera
-        pool = Executors.newScheduledThreadPool(5);
+    // Set once the started task's control steps have begun, after the camera startup
+    private volatile boolean taskStarted = false;
+
+    private final long CONTROL_PERIOD = KobukiRobot.MIN_UPDATE_PERIOD * 2; // ms
+    private final long CONTROL_PERIOD_NS = TimeUnit.MILLISECONDS.toNanos(CONTROL_PERIOD);
 
-        // Setup robot
-        k = new KobukiRobot(port);
+    // Commands are never sent closer together than this, and are repeated when frames stop arriving
+    private final long MIN_COMMAND_GAP = TimeUnit.MILLISECONDS.toNanos(KobukiRobot.MIN_UPDATE_PERIOD); // ns
+    private final long KEEP_ALIVE = TimeUnit.MILLISECONDS.toNanos(CONTROL_PERIOD); // ns
 
-        // Setup camera
-        camera = new KobukiCamera(cameraView, pool);
+    // Measurements older than two control periods count as stale
+    private final long STALE_AFTER = TimeUnit.MILLISECONDS.toNanos(CONTROL_PERIOD * 2); // ns
 
-        // Store reference to ImageView
-        this.faceView = faceView;
+
+    KobukiController(String port, PreviewSink preview) {
+        this(new SerialRobot(port), preview);
+    }
+
+    KobukiController(Robot robot, PreviewSink preview) {
+        this("kobuki", robot, preview, null);
+    }
+
+    // One of several robots in a process: metrics, JMX beans and the parameter file (<name>.properties)
+    // are named after it, and control steps run on the given shared scheduler, which shutdown() leaves
+    // alone. A VirtualScheduler runs the whole robot, camera included, on virtual time.
+    KobukiController(String name, Robot robot, PreviewSink preview, Scheduler scheduler) {
+        // Setup thread pool
+        // Responsible for movement, input gathering, task execution, and camera
+        this.name = name;
+        ownsPool = scheduler == null;
+        pool = ownsPool ? RealTimeScheduler.fixed(5) : scheduler;
+        cameras = new CameraFusion(pool);
+
+        metrics = new Metrics(name);
+        taskOneTime = metrics.histogram("control.taskOne");
+        taskTwoTime = metrics.histogram("control.taskTwo");
+        detectionToCommand = metrics.histogram("latency.detectionToCommand");
+        captureToCommand = metrics.histogram("latency.captureToCommand");
+        staleMeasurements = metrics.counter("control.staleMeasurements");
+        repeatedMeasurements = metrics.counter("control.repeatedMeasurements");
+        controlLateness = metrics.histogram("control.lateness");
+        missedDeadlines = metrics.counter("control.missedDeadlines");
+        deferredSteps = metrics.counter("control.deferredSteps");
+        keepAliveSteps = metrics.counter("control.keepAliveSteps");
+        skippedSteps = metrics.counter("control.skippedSteps");
+
+        // Setup robot; commands and encoder reads can be recorded
+        recordingRobot = new RecordingRobot(robot, pool);
+
+        // Every command goes through one writer, which paces and coalesces them
+        k = new CommandWriter(recordingRobot, KobukiRobot.MIN_UPDATE_PERIOD, metrics, pool);
+        k.start();
+
+        odometry = new Odometry(k, KobukiRobot.MIN_UPDATE_PERIOD, metrics, pool);
+        odometry.start();
+
+        // Setup camera. On virtual time the parameter file is only read once: an edit halfway
+        // through would make the run unrepeatable.
+        parameters.register(name);
+        Path file = Paths.get(name + ".properties");
+
+        if (!(pool instanceof VirtualScheduler))
+            parameters.watch(file, pool);
+        else if (Files.exists(file))
+            loadParameters(file);
+
+        this.preview = preview;
+        camera = new KobukiCamera(preview, pool, metrics, parameters);
+        cameras.add(camera, CameraMount.FRONT);
+
+        // Print a latency summary every few seconds
+        metrics.startSummaryDump(pool, 10);
     }
 
     public void move(short speed, short radius) {
@@ -62,33 +193,27 @@ public class KobukiController {
         currentTask = pool.scheduleAtFixedRate(() -> {
             moveOne(speed, radius);
         }, 0, KobukiRobot.MIN_UPDATE_PERIOD*2, TimeUnit.MILLISECONDS);
-
-        System.out.println("Should start moving!");
     }
 
     public void move(short speed, short radius, double distance) {
         // Move the Kobuki straight for some distance (in meters)
         stop();
 
-        final int startTick = k.getLeftEncoder();
+        final Odometry.Goal travel = odometry.travel(distance, haltNow);
 
         currentTask = pool.scheduleAtFixedRate(() -> {
-            moveOne(speed, radius);
-
-            double tickDiff = Math.abs(k.getLeftEncoder() - startTick) % MAX_TICKS;
-
-            if (tickDiff >= TICKS_PER_METER * distance)
+            if (driveToward(travel, speed, radius))
                 stop();
-
         }, 0, KobukiRobot.MIN_UPDATE_PERIOD*2, TimeUnit.MILLISECONDS);
     }
 
     private void moveOne(short speed, short radius) {
-        try {
-            k.baseControl(speed, radius);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        lastCommand = pool.nanoTime();
+        commandSpeed = speed;
+        commandRadius = radius;
+
+        // Only posts the command; the writer sends it
+        k.baseControl(speed, radius);
     }
 
     public void rotate(double w) {
@@ -104,16 +229,15 @@ public class KobukiController {
         final double speed = (w * 230) / 2;
         final short radius = 1;
 
-        System.out.println(speed);
+        // time is in ms, measured on the clock rather than by counting ticks that may run late
+        rotateStart = pool.nanoTime();
 
         rotateTask = pool.scheduleAtFixedRate(() -> {
-            if (rotateCount * (KobukiRobot.MIN_UPDATE_PERIOD * 2) >= time) {
-                rotateCount = 0;
+            if (pool.nanoTime() - rotateStart >= TimeUnit.MILLISECONDS.toNanos((long) time)) {
                 stopMovement();
+                return;
             }
 
-            rotateCount++;
-
             moveOne((short) Math.round(speed), radius);
         }, 0, KobukiRobot.MIN_UPDATE_PERIOD * 2, TimeUnit.MILLISECONDS);
     }
@@ -121,197 +245,561 @@ public class KobukiController {
     public void startTask(int task) {
         stop();
 
-        camera.start(task);
+        cameras.start(task);
+        lastMeasurement = 0;
 
-        // Wait for camera to start
-        sleep(1000);
+        estimator.reset();
+        taskStarted = false;
 
-        // Select task
-        switch (task) {
-            case 1:
-                taskOne();
-                break;
-            case 2:
-                taskTwo();
-                break;
-        }
+        // Give the camera time to start, then select the task
+        currentTask = pool.schedule(() -> {
+            taskStarted = true;
+
+            switch (task) {
+                case 1:
+                    taskOne();
+                    break;
+                case 2:
+                    taskTwo();
+                    break;
+            }
+        }, CAMERA_STARTUP, TimeUnit.MILLISECONDS);
     }
 
     private void taskOne() {
-        currentTask = pool.scheduleAtFixedRate(() -> {
-            if (camera.isVisible()) {
-                // For end of task
-                if (stopFrames > 75) {
-                    stopFrames = 0;
-                    stopMovement();
-                }
+        control(this::taskOneTick, taskOneTime);
+    }
 
-                faceView.setImage(new Image("file:images/happy.jpg"));
+    private void taskOneTick() {
+        Observation o = camera.getObservation();
 
-                updateSpeed();
+        if (o.isVisible()) {
+            // For end of task
+            if (follower.getStopFrames() > 75) {
+                follower.resetStopFrames();
+                stopMovement();
+            }
 
-                moveOne(speed, radius);
+            preview.showFace(true);
 
-                System.out.println("Error = " + prevError + " " + speed + " " + distance);
-            }
+            follow(o);
+        }
 
-            else
-                stopMovement();
-        }, 0, KobukiRobot.MIN_UPDATE_PERIOD*2, TimeUnit.MILLISECONDS);
+        else
+            stopMovement();
+
+        log(0, o);
     }
 
     private void taskTwo() {
-        currentTask = pool.scheduleAtFixedRate(() -> {
-            // If the person disappears, start count
-            if (!camera.visibleThisFrame && !looking)
-                startTick = k.getLeftEncoder();
-            else if (camera.visibleThisFrame && !looking)
-                startTick = 0;
+        enter(TaskTwoState.FOLLOW);
+        wasVisible = true;
+
+        // Every step is short and non-blocking; waits are measured from entering the state
+        control(this::taskTwoTick, taskTwoTime);
+    }
+
+    private void taskTwoTick() {
+        // Read once so every decision in this tick sees the same frame
+        Observation o = camera.getObservation();
+        boolean seen = o.isVisibleThisFrame();
+
+        switch (state) {
+            case FOLLOW:
+                // If the person disappears, remember where and how far away they were
+                if (wasVisible && !seen) {
+                    lostAt = odometry.getPose().getTravelled();
+                    lostDistance = o.getDistance();
+                }
+
+                wasVisible = seen;
+
+                // Drive up to where the person turned the corner, unless a side camera already sees them
+                if (!o.isVisible()) {
+                    if (turnToSideCamera())
+                        break;
+
+                    goal = odometry.travel(lostAt, lostDistance - 0.2, haltNow);
+                    enter(TaskTwoState.OVERSHOOT);
+                    break;
+                }
 
-            if (camera.isVisible() && !looking) {
                 // After 3 seconds stopped, assume task ended
-                if (stopFrames > 75) {
-                    stopFrames = 0;
+                if (follower.getStopFrames() > 75) {
+                    follower.resetStopFrames();
                     stopMovement();
+                    break;
                 }
 
-                updateSpeed();
+                follow(o);
+                break;
 
-                moveOne(speed, radius);
-            }
+            case OVERSHOOT:
+                // Back in view before reaching the corner
+                if (seen) {
+                    odometry.cancelGoal();
+                    wasVisible = true;
+                    enter(TaskTwoState.FOLLOW);
+                    break;
+                }
 
-            else if (!camera.isVisible() && looking) {
-                // Finding the man around corner
-                double tickDiff = Math.abs(k.getLeftEncoder() - startTick) % MAX_TICKS;
+                if (turnToSideCamera())
+                    break;
 
-                System.out.println(distance);
+                // Then rotate 90 to the left
+                if (driveToward(goal, (short) 100, (short) 0)) {
+                    goal = odometry.turn(Math.PI / 2, haltNow);
+                    enter(TaskTwoState.ROTATE_LEFT);
+                }
+                break;
 
-                // If 2 meters done, stop; call other function
-                if (tickDiff >= TICKS_PER_METER * (distance-0.2)) {
-                    System.out.println("Done");
-                    nextTaskTwo();
+            case ROTATE_LEFT:
+                // pi rad/s, so about 0.5 s; give up on the odometry after twice that
+                if (seen)
+                    approach(o);
+                else if (driveToward(goal, rotationSpeed(Math.PI), (short) 1) || elapsed(1000)) {
+                    halt();
+                    enter(TaskTwoState.SCAN_LEFT);
                 }
+                break;
 
-                moveOne((short)100, (short)0);
-            }
+            case SCAN_LEFT:
+                // Then rotate 180 to the right
+                if (seen)
+                    approach(o);
+                else if (turnToSideCamera())
+                    break;
+                else if (elapsed(2000)) {
+                    goal = odometry.turn(Math.PI, haltNow);
+                    enter(TaskTwoState.ROTATE_RIGHT);
+                }
+                break;
 
-            else
-                looking = true;
-        }, 0, KobukiRobot.MIN_UPDATE_PERIOD*2, TimeUnit.MILLISECONDS);
+            case ROTATE_RIGHT:
+                // -pi rad/s, so about 1 s; give up on the odometry after twice that
+                if (seen)
+                    approach(o);
+                else if (driveToward(goal, rotationSpeed(-Math.PI), (short) 1) || elapsed(2000)) {
+                    halt();
+                    enter(TaskTwoState.SCAN_RIGHT);
+                }
+                break;
+
+            case SCAN_RIGHT:
+                if (seen)
+                    approach(o);
+                else if (turnToSideCamera())
+                    break;
+                else if (elapsed(2000))
+                    enter(TaskTwoState.LOST);
+                break;
+
+            case TURN_TO_TARGET:
+                // Up to pi at pi rad/s; if the front camera still doesn't see them, wait in LOST,
+                // which turns again for a newer sighting
+                if (seen)
+                    approach(o);
+                else if (driveToward(goal, rotationSpeed(turnDirection * Math.PI), (short) 1) || elapsed(2000)) {
+                    halt();
+                    enter(TaskTwoState.LOST);
+                }
+                break;
+
+            case APPROACH:
+                // Close the gap straight ahead, then hand back to the P controller
+                if (driveToward(goal, (short) 100, (short) 0)) {
+                    wasVisible = seen;
+                    enter(TaskTwoState.FOLLOW);
+                }
+                break;
+
+            case LOST:
+                // Stay put until the person shows up again
+                if (seen)
+                    approach(o);
+                else
+                    turnToSideCamera();
+                break;
+        }
+
+        log(state.ordinal() + 1, o);
     }
 
-    private void nextTaskTwo() {
-        // Stop currentTask
-        stopMovement();
+    // One telemetry record per control tick; state is 0 in Task 1 and the Task 2 state + 1
+    private void log(int state, Observation o) {
+        TelemetryLog t = telemetry;
+
+        if (t != null)
+            t.tick(state, follower.getError(), follower.getDistance(), commandSpeed, commandRadius, o.isVisible(),
+                    odometry.getLeftEncoder(), odometry.getRightEncoder());
+    }
+
+    // Control step on the camera's latest distance, traced back to the frame it was measured on
+    private void follow(Observation o) {
+        long sequence = o.getMeasuredSequence();
+        long captured = o.getCaptureTime();
+        long detected = o.getDetectionTime();
+
+        if (sequence != 0) {
+            if (sequence == lastMeasurement)
+                repeatedMeasurements.incrementAndGet();
+
+            if (pool.nanoTime() - captured > STALE_AFTER)
+                staleMeasurements.incrementAndGet();
+        }
+
+        long now = pool.nanoTime();
+
+        Pose pose = odometry.getPose();
+        estimator.odometry(pose.getTime(), pose.getTravelled());
 
-        // Sleep for 0.2 s
-        sleep(100);
+        if (sequence != 0 && sequence != lastMeasurement)
+            estimator.measure(captured, o.getDistance());
 
-        // Rotate 90 to the left
-        rotateOne(Math.PI, 500); // pi rad/s for 0.5 s
+        lastMeasurement = sequence;
 
-        sleep(2000);
+        Parameters p = parameters.get();
 
-        // If square is visible, move; otherwise rotate -180
-        if (camera.isVisible()) {
-            double error = camera.getDistance() - TASK_2_RANGE; // error in meters
+        if (p != followParameters) {
+            follower.configure(p);
+            followParameters = p;
+        }
+
+        if (predictive && estimator.isValid())
+            follower.update(estimator.predict(now), estimator.getDistanceRate(), estimator.getTargetSpeed());
+        else
+            follower.update(o.getDistance(), 0, 0);
 
-            move((short)100, (short)0, error);
+        moveOne(follower.getSpeed(), radius);
 
-            found = true;
+        if (sequence != 0) {
+            now = pool.nanoTime();
+            detectionToCommand.record(now - detected);
+            captureToCommand.record(now - captured);
         }
+    }
+
+    // Turns on the spot toward a person only the side cameras can see
+    private boolean turnToSideCamera() {
+        if (cameras.size() < 2)
+            return false;
+
+        FusedTarget t = cameras.fuse();
+
+        if (!t.isDetected() || Math.abs(t.getBearing()) < SIDE_BEARING)
+            return false;
+
+        halt();
+
+        turnDirection = Math.signum(t.getBearing());
+        goal = odometry.turn(t.getBearing(), haltNow);
+        enter(TaskTwoState.TURN_TO_TARGET);
 
+        return true;
+    }
+
+    private void approach(Observation o) {
+        preview.showFace(true);
+
+        approachDistance = o.getDistance() - TASK_2_RANGE; // error in meters
+        goal = odometry.travel(approachDistance, null);
+
+        enter(TaskTwoState.APPROACH);
+    }
+
+    private void enter(TaskTwoState next) {
+        state = next;
+        stateStart = pool.nanoTime();
+    }
+
+    private boolean elapsed(long millis) {
+        return pool.nanoTime() - stateStart >= TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    // Runs a task's control step, either polled every control period or on each new observation
+    private void control(Runnable tick, LatencyHistogram time) {
+        step = () -> {
+            long start = System.nanoTime();
+            tick.run();
+            time.recordSince(start);
+        };
+
+        if (eventDriven) {
+            camera.setListener(this::onObservation);
+
+            // Keep commands flowing when frames stop arriving
+            currentTask = pool.scheduleAtFixedRate(() -> {
+                if (pool.nanoTime() - lastCommand >= KEEP_ALIVE) {
+                    keepAliveSteps.incrementAndGet();
+                    runStep();
+                }
+            }, CONTROL_PERIOD, CONTROL_PERIOD, TimeUnit.MILLISECONDS);
+        }
         else {
-            // Rotate 180 deg to the right
-            rotateOne(-Math.PI, 1000);
-            sleep(2000);
+            nextTick = pool.nanoTime();
+            currentTask = pool.scheduleAtFixedRate(this::pollStep, 0, CONTROL_PERIOD, TimeUnit.MILLISECONDS);
+        }
+    }
 
-            if (camera.isVisible()) {
-                double error = camera.getDistance() - TASK_2_RANGE; // error in meters
+    // A fixed-rate executor runs late ticks back to back to catch up. Those would only send stale
+    // commands, and on a shared scheduler they would hold up other robots, so they are dropped.
+    private void pollStep() {
+        long late = pool.nanoTime() - nextTick;
+        nextTick += CONTROL_PERIOD_NS;
 
-                move((short)100, (short)0, error);
+        controlLateness.record(Math.max(0, late));
 
-                found = true;
-            }
+        if (late >= CONTROL_PERIOD_NS) {
+            missedDeadlines.incrementAndGet();
+            return;
         }
 
-        if (found) {
-            System.out.println("Found");
-            looking = false;
-            faceView.setImage(new Image("file:images/happy.jpg"));
+        runStep();
+    }
+
+    // Called in the camera's processing step; the control step itself runs on the pool
+    private void onObservation(Observation o) {
+        long wait = lastCommand + MIN_COMMAND_GAP - pool.nanoTime();
+
+        if (wait <= 0)
+            pool.execute(eventStep);
+
+        // Too soon after the last command: run once the gap has passed, on whatever is newest then
+        else if (deferred.compareAndSet(false, true)) {
+            deferredSteps.incrementAndGet();
+            pool.schedule(deferredStep, wait, TimeUnit.NANOSECONDS);
         }
     }
 
-    private void updateSpeed() {
-        // Slow down or speed up based on distance error
-        distance = camera.getDistance() * 1000 - 300; // 30 cm manual offset
+    private void runStep() {
+        Runnable s = step;
 
-        double error = distance - TASK_1_RANGE;
+        if (s == null)
+            return;
 
-        if (prevError != error) {
-            double offset;
-            double k;
+        // Event, deferred and keep-alive steps can race; only one runs at a time
+        if (!stepLock.tryLock()) {
+            skippedSteps.incrementAndGet();
+            return;
+        }
 
-            if (error >= 0) k = 0.1;
-            else k = 0.2;
+        try {
+            s.run();
+        } finally {
+            stepLock.unlock();
+        }
+    }
 
-            // Get the offset
-            offset = k * error;
+    // Takes effect the next time a task is started
+    public void setEventDriven(boolean eventDriven) {
+        this.eventDriven = eventDriven;
+    }
 
-            prevError = error;
+    private void halt() {
+        moveOne((short) 0, (short) 0);
+    }
 
-            speed += (short)Math.round(offset);
+    // Posts the move until the goal is reached; checks again after posting, since the odometry
+    // thread may have stopped the robot in between
+    private boolean driveToward(Odometry.Goal g, short speed, short radius) {
+        if (g.isReached())
+            return true;
+
+        moveOne(speed, radius);
+
+        if (g.isReached()) {
+            halt();
+            return true;
         }
 
-        // Set max and min speed
-        if (speed > 400)
-            speed = 400;
+        return false;
+    }
 
-        if (speed < 0)
-            speed = 0;
+    private static short rotationSpeed(double w) {
+        // Wheel speed for w rad/s on the spot
+        return (short) Math.round((w * 230) / 2);
+    }
 
-        if (speed == 0)
-            stopFrames++;
-        else
-            stopFrames = 0;
+    void updateSpeed(double measured) {
+        follower.update(measured, 0, 0);
+    }
+
+    // Use the latency-compensated prediction instead of the raw distance
+    public void setPredictive(boolean predictive) {
+        this.predictive = predictive;
+    }
+
+    public void setFollowMode(FollowController.Mode mode) {
+        follower.setMode(mode);
+    }
+
+    public FollowController getFollower() {
+        return follower;
+    }
+
+    public TargetEstimator getEstimator() {
+        return estimator;
+    }
+
+    public void startRecording(String path) {
+        stopRecording();
+
+        try {
+            recorder = new Recorder(path, pool);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        camera.setRecorder(recorder);
+        recordingRobot.setRecorder(recorder);
+
+        System.out.println("Recording to " + path);
+    }
+
+    public void stopRecording() {
+        if (recorder == null)
+            return;
+
+        camera.setRecorder(null);
+        recordingRobot.setRecorder(null);
+
+        recorder.close();
+        recorder = null;
+    }
+
+    // Traces every control tick and calibration frame to a TelemetryLog file; see TelemetryExport
+    public void startTelemetry(String path) {
+        stopTelemetry();
+
+        try {
+            telemetry = new TelemetryLog(path, pool);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        camera.setTelemetry(telemetry);
+    }
+
+    public void stopTelemetry() {
+        TelemetryLog t = telemetry;
+
+        if (t == null)
+            return;
+
+        camera.setTelemetry(null);
+        telemetry = null;
+
+        if (t.getDropped() > 0)
+            System.out.println("Telemetry dropped " + t.getDropped() + " records");
+
+        t.close();
+    }
+
+    short getSpeed() {
+        return follower.getSpeed();
+    }
+
+    public ParameterRegistry getParameters() {
+        return parameters;
+    }
+
+    private void loadParameters(Path file) {
+        try {
+            parameters.load(file);
+        } catch (IOException e) {
+            System.out.println("Could not read " + file + ": " + e.getMessage());
+        }
+    }
+
+    public Pose getPose() {
+        return odometry.getPose();
     }
 
     public KobukiCamera getCamera() {
         return camera;
     }
 
+    // Another camera with its own capture and detection threads and its own metrics. Side cameras
+    // let Task 2 turn straight to a person who walked out of the front camera's view.
+    public KobukiCamera addCamera(FrameSource source, CameraMount mount) {
+        Metrics m = new Metrics(name + "-camera" + cameras.size());
+        KobukiCamera c = new KobukiCamera(PreviewSink.NONE, pool, m, parameters);
+        c.setSource(source);
+
+        cameras.add(c, mount);
+        cameraMetrics.add(m);
+
+        return c;
+    }
+
+    public CameraFusion getCameras() {
+        return cameras;
+    }
+
     public void stop() {
-        camera.stop();
+        cameras.stop();
 
         stopMovement();
     }
 
     public void stopMovement() {
+        // Detach from the camera so no further steps are triggered
+        step = null;
+        camera.setListener(null);
+
         // Cancel running task
-        if (currentTask != null && !currentTask.isCancelled())
-            currentTask.cancel(true);
+        if (currentTask != null)
+            currentTask.cancel();
 
-        if (rotateTask != null && !rotateTask.isCancelled())
-            rotateTask.cancel(true);
+        if (rotateTask != null)
+            rotateTask.cancel();
 
-        try {
-            k.baseControl((short) 0, (short) 0);
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.out.println("No need to stop the Kobuki.");
-        }
+        odometry.cancelGoal();
 
-        speed = 0;
+        // Stops go out ahead of any command still waiting to be sent
+        lastCommand = pool.nanoTime();
+        commandSpeed = 0;
+        commandRadius = 0;
+        k.baseControl((short) 0, (short) 0);
+
+        follower.stop();
         radius = 0;
 
-        faceView.setImage(null);
+        preview.showFace(false);
     }
 
-    private void sleep(int milli) {
-        try {
-            Thread.sleep(milli);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+    public void shutdown() {
+        stopRecording();
+        stop();
+        stopTelemetry();
+        metrics.unregister();
+        cameraMetrics.forEach(Metrics::unregister);
+
+        if (ownsPool)
+            pool.shutdown();
+
+        odometry.stop();
+        k.close();
+        parameters.unregister();
+        preview.close();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public Scheduler getScheduler() {
+        return pool;
+    }
+
+    // False from startTask() until the camera has had its startup time and the task's first step is due
+    public boolean isTaskStarted() {
+        return taskStarted;
     }
 }
@@ -0,0 +1,112 @@
+package com.company;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Lock-free, allocation-free latency histogram with log-linear buckets (about 6% resolution)
+public class LatencyHistogram {
+    // Each power of two is split into 2^SUB_BITS linear sub-buckets
+    private static final int SUB_BITS = 4;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB;
+
+    private final String name;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+
+        counts.incrementAndGet(index(nanos));
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+
+        long m = max.get();
+
+        while (nanos > m && !max.compareAndSet(m, nanos))
+            m = max.get();
+    }
+
+    // Records the time since start, which should come from System.nanoTime()
+    public void recordSince(long start) {
+        record(System.nanoTime() - start);
+    }
+
+    private static int index(long v) {
+        if (v < SUB)
+            return (int) v;
+
+        // Position of the top bit picks the power of two, the next SUB_BITS bits the sub-bucket
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        return (shift + 1) * SUB + (int) ((v >>> shift) & (SUB - 1));
+    }
+
+    // Upper bound of a bucket's range
+    private static long upper(int index) {
+        if (index < SUB)
+            return index;
+
+        int shift = index / SUB - 1;
+        long base = (long) (SUB + index % SUB) << shift;
+
+        return base + (1L << shift) - 1;
+    }
+
+    // Value at or below which the given fraction of samples fall
+    public long percentile(double fraction) {
+        long total = count.get();
+
+        if (total == 0)
+            return 0;
+
+        long target = (long) Math.ceil(fraction * total);
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+
+            if (seen >= target)
+                return Math.min(upper(i), max.get());
+        }
+
+        return max.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    public LatencySnapshot snapshot() {
+        return new LatencySnapshot(getCount(), percentile(0.5), percentile(0.99), getMax(), getMean());
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            counts.set(i, 0);
+
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+}
@@ -0,0 +1,43 @@
+package com.company;
+
+// Point-in-time view of a LatencyHistogram; exposed over JMX as composite data
+public class LatencySnapshot {
+    private final long count;
+    private final long p50;
+    private final long p99;
+    private final long max;
+    private final double mean;
+
+    LatencySnapshot(long count, long p50, long p99, long max, double mean) {
+        this.count = count;
+        this.p50 = p50;
+        this.p99 = p99;
+        this.max = max;
+        this.mean = mean;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getP50Micros() {
+        return p50 / 1e3;
+    }
+
+    public double getP99Micros() {
+        return p99 / 1e3;
+    }
+
+    public double getMaxMicros() {
+        return max / 1e3;
+    }
+
+    public double getMeanMicros() {
+        return mean / 1e3;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d p50=%.1fus p99=%.1fus max=%.1fus", count, getP50Micros(), getP99Micros(), getMaxMicros());
+    }
+}
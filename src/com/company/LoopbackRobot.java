@@ -0,0 +1,79 @@
+package com.company;
+
+import java.util.concurrent.locks.LockSupport;
+
+// Stand-in robot for load tests: each command takes about as long as a serial write, and the
+// encoders advance as if the wheels followed the last command exactly
+public class LoopbackRobot implements Robot {
+    private final long writeTime; // ns per command
+    private final Clock clock;
+
+    private short speed = 0; // mm/s
+    private short radius = 0; // mm
+    private long last;
+    private double left = 0, right = 0; // ticks
+    private long commands = 0;
+
+    LoopbackRobot(long writeTime) {
+        this(writeTime, Clock.SYSTEM);
+    }
+
+    LoopbackRobot(long writeTime, Clock clock) {
+        this.writeTime = writeTime;
+        this.clock = clock;
+        this.last = clock.nanoTime();
+    }
+
+    public void baseControl(short speed, short radius) {
+        if (writeTime > 0)
+            LockSupport.parkNanos(writeTime);
+
+        synchronized (this) {
+            advance();
+
+            this.speed = speed;
+            this.radius = radius;
+            commands++;
+        }
+    }
+
+    public synchronized int getLeftEncoder() {
+        advance();
+        return (int) Math.round(left) & 0xFFFF;
+    }
+
+    public synchronized int getRightEncoder() {
+        advance();
+        return (int) Math.round(right) & 0xFFFF;
+    }
+
+    public synchronized void readEncoders(int[] out) {
+        advance();
+        out[0] = (int) Math.round(left) & 0xFFFF;
+        out[1] = (int) Math.round(right) & 0xFFFF;
+    }
+
+    public synchronized long getCommands() {
+        return commands;
+    }
+
+    // Wheel speeds for the Kobuki's speed/radius command: radius 0 drives straight, 1 spins on the spot
+    private void advance() {
+        long now = clock.nanoTime();
+        double ticks = speed / 1000.0 * Odometry.TICKS_PER_METER * (now - last) / 1e9;
+        double half = Odometry.WHEELBASE * 1000 / 2;
+
+        last = now;
+
+        if (radius == 0) {
+            left += ticks;
+            right += ticks;
+        } else if (radius == 1) {
+            left -= ticks;
+            right += ticks;
+        } else {
+            left += ticks * (radius - half) / radius;
+            right += ticks * (radius + half) / radius;
+        }
+    }
+}
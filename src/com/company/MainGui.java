@@ -4,6 +4,8 @@ import javafx.application.Application;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
+import java.lang.management.ManagementFactory;
+
 public class MainGui extends Application {
     private Stage primaryStage;
 
@@ -20,9 +22,15 @@ public class MainGui extends Application {
         primaryStage.setScene(scene);
 //        primaryStage.setWidth(800);
 //        primaryStage.setHeight(600);
-        primaryStage.setOnCloseRequest((event) -> System.exit(0));
+        primaryStage.setOnCloseRequest((event) -> {
+            c.shutdown();
+            System.exit(0);
+        });
 
         primaryStage.show();
+
+        // Same measure as Headless prints, for comparison
+        System.out.println("Started in " + ManagementFactory.getRuntimeMXBean().getUptime() + " ms");
     }
 
     public static void main(String[] args) {
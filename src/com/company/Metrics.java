@@ -0,0 +1,151 @@
+package com.company;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Named latency histograms and counters for one robot, published over JMX.
+// Look histograms up once and keep the reference; recording is lock-free.
+public class Metrics implements MetricsMXBean {
+    private final String name;
+
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    // Latest value of something measured periodically, like a rate
+    public static final class Gauge {
+        private volatile double value;
+
+        public void set(double value) {
+            this.value = value;
+        }
+
+        public double get() {
+            return value;
+        }
+    }
+
+    private ObjectName objectName = null;
+    private Scheduler.Task dumpTask = null;
+
+    // Unregistered metrics, for components used on their own (benchmarks, replays)
+    Metrics() {
+        this.name = null;
+    }
+
+    Metrics(String name) {
+        this.name = name;
+
+        try {
+            objectName = new ObjectName("com.company:type=Metrics,name=" + name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (Exception e) {
+            System.out.println("Could not register metrics over JMX: " + e.getMessage());
+            objectName = null;
+        }
+    }
+
+    public LatencyHistogram histogram(String key) {
+        return histograms.computeIfAbsent(key, LatencyHistogram::new);
+    }
+
+    public AtomicLong counter(String key) {
+        return counters.computeIfAbsent(key, k -> new AtomicLong());
+    }
+
+    public Gauge gauge(String key) {
+        return gauges.computeIfAbsent(key, k -> new Gauge());
+    }
+
+    public Map<String, LatencySnapshot> getLatencies() {
+        Map<String, LatencySnapshot> m = new TreeMap<>();
+
+        for (LatencyHistogram h: histograms.values())
+            m.put(h.getName(), h.snapshot());
+
+        return m;
+    }
+
+    public Map<String, Long> getCounters() {
+        Map<String, Long> m = new TreeMap<>();
+
+        for (Map.Entry<String, AtomicLong> e: counters.entrySet())
+            m.put(e.getKey(), e.getValue().get());
+
+        return m;
+    }
+
+    public Map<String, Double> getGauges() {
+        Map<String, Double> m = new TreeMap<>();
+
+        for (Map.Entry<String, Gauge> e: gauges.entrySet())
+            m.put(e.getKey(), e.getValue().get());
+
+        return m;
+    }
+
+    public String getSummary() {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("Metrics");
+
+        if (name != null)
+            sb.append(" [").append(name).append("]");
+
+        sb.append('\n');
+
+        for (Map.Entry<String, LatencySnapshot> e: getLatencies().entrySet()) {
+            if (e.getValue().getCount() > 0)
+                sb.append(String.format("  %-28s %s%n", e.getKey(), e.getValue()));
+        }
+
+        for (Map.Entry<String, Long> e: getCounters().entrySet())
+            sb.append(String.format("  %-28s %d%n", e.getKey(), e.getValue()));
+
+        for (Map.Entry<String, Double> e: getGauges().entrySet())
+            sb.append(String.format("  %-28s %.1f%n", e.getKey(), e.getValue()));
+
+        return sb.toString();
+    }
+
+    public void reset() {
+        for (LatencyHistogram h: histograms.values())
+            h.reset();
+
+        for (AtomicLong c: counters.values())
+            c.set(0);
+    }
+
+    // Prints the summary every period seconds on the given scheduler
+    public void startSummaryDump(Scheduler scheduler, long period) {
+        stopSummaryDump();
+        dumpTask = scheduler.scheduleAtFixedRate(() -> System.out.print(getSummary()), period, period, TimeUnit.SECONDS);
+    }
+
+    public void stopSummaryDump() {
+        if (dumpTask != null)
+            dumpTask.cancel();
+
+        dumpTask = null;
+    }
+
+    public void unregister() {
+        stopSummaryDump();
+
+        if (objectName == null)
+            return;
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        objectName = null;
+    }
+}
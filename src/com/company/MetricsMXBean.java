@@ -0,0 +1,15 @@
+package com.company;
+
+import java.util.Map;
+
+public interface MetricsMXBean {
+    Map<String, LatencySnapshot> getLatencies();
+
+    Map<String, Long> getCounters();
+
+    Map<String, Double> getGauges();
+
+    String getSummary();
+
+    void reset();
+}
@@ -0,0 +1,56 @@
+package com.company;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+// Serves the latest JPEG snapshot over HTTP, so an unattended run can still be checked from a
+// browser: http://<robot>:<port>/ . Requests are answered on the server's own thread.
+public class NetworkPreviewSink extends JpegPreviewSink {
+    private final HttpServer server;
+    private volatile byte[] latest = null;
+
+    NetworkPreviewSink(int port, double fps) throws IOException {
+        super(fps);
+
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    protected void publish(byte[] jpeg) {
+        latest = jpeg;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] jpeg = latest;
+
+        try {
+            if (jpeg == null) {
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "image/jpeg");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, jpeg.length);
+
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(jpeg);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    public void clear() {
+        latest = null;
+    }
+
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,82 @@
+package com.company;
+
+// What the camera knows about the target after one frame. Immutable, so the control
+// thread can read every field of one frame without locking or seeing a half-written update.
+public final class Observation {
+    // Before the first frame: assume the target is there at 1 m, as the controller always has
+    static final Observation NONE = new Observation(0, 1, null, true, true, 0, 0, 0);
+
+    private final long sequence;
+    private final double distance;
+    private final float[] corners;
+    private final boolean visible;
+    private final boolean visibleThisFrame;
+    private final long measuredSequence;
+    private final long captureTime;
+    private final long detectionTime;
+
+    Observation(long sequence, double distance, float[] corners, boolean visible, boolean visibleThisFrame,
+                long measuredSequence, long captureTime, long detectionTime) {
+        this.sequence = sequence;
+        this.distance = distance;
+        this.corners = corners;
+        this.visible = visible;
+        this.visibleThisFrame = visibleThisFrame;
+        this.measuredSequence = measuredSequence;
+        this.captureTime = captureTime;
+        this.detectionTime = detectionTime;
+    }
+
+    // Same measurement, new frame: only visibility changes
+    Observation next(long sequence, boolean visible, boolean visibleThisFrame) {
+        return new Observation(sequence, distance, corners, visible, visibleThisFrame,
+                measuredSequence, captureTime, detectionTime);
+    }
+
+    // Capture sequence number of the frame this observation was made on
+    public long getSequence() {
+        return sequence;
+    }
+
+    // Distance in m from the last frame the square was found on
+    public double getDistance() {
+        return distance;
+    }
+
+    public boolean hasCorners() {
+        return corners != null;
+    }
+
+    // Corner i (0-3) of the last square found, in capture pixels
+    public float getCornerX(int i) {
+        return corners[2 * i];
+    }
+
+    public float getCornerY(int i) {
+        return corners[2 * i + 1];
+    }
+
+    // Debounced: only false after the square has been missing for a while
+    public boolean isVisible() {
+        return visible;
+    }
+
+    public boolean isVisibleThisFrame() {
+        return visibleThisFrame;
+    }
+
+    // Capture sequence number of the frame the distance was measured on; 0 before the first measurement
+    public long getMeasuredSequence() {
+        return measuredSequence;
+    }
+
+    // Clock time at which that frame was captured, from the camera's scheduler
+    public long getCaptureTime() {
+        return captureTime;
+    }
+
+    // Clock time at which the distance was computed from it
+    public long getDetectionTime() {
+        return detectionTime;
+    }
+}
@@ -0,0 +1,180 @@
+package com.company;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Samples both wheel encoders at the Kobuki's feedback rate on the shared scheduler, unwraps the
+// 16-bit counters and integrates a differential-drive pose. Travel and turn goals are checked
+// on every sample, so their action runs on the exact sample the target is reached.
+public class Odometry {
+    static final double TICKS_PER_METER = 11724.4165803;
+    static final double WHEELBASE = 0.230; // m
+
+    // A distance or angle to cover from a starting point; reached at most once
+    public static final class Goal {
+        private final boolean turn;
+        private final double start;
+        private final double target;
+        private final Runnable action;
+        private volatile boolean reached = false;
+
+        private Goal(boolean turn, double start, double target, Runnable action) {
+            this.turn = turn;
+            this.start = start;
+            this.target = target;
+            this.action = action;
+        }
+
+        public boolean isReached() {
+            return reached;
+        }
+    }
+
+    private final Robot robot;
+    private final long period;
+
+    private final AtomicReference<Pose> pose = new AtomicReference<>(Pose.ORIGIN);
+
+    // Raw counters of the latest sample, for telemetry
+    private volatile int leftEncoder, rightEncoder;
+    private final AtomicReference<Goal> goal = new AtomicReference<>();
+
+    private final LatencyHistogram sampleTime;
+
+    private final Scheduler scheduler;
+    private Scheduler.Task task = null;
+
+    // Only touched by the sampling task
+    private final int[] encoders = new int[2];
+    private int lastLeft, lastRight;
+    private double x, y, heading, travelled;
+    private long last;
+
+    Odometry(Robot robot, long periodMillis, Metrics metrics, Scheduler scheduler) {
+        this.robot = robot;
+        this.scheduler = scheduler;
+        this.period = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+
+        sampleTime = metrics.histogram("odometry.sample");
+    }
+
+    public synchronized void start() {
+        if (task != null)
+            return;
+
+        robot.readEncoders(encoders);
+        lastLeft = encoders[0];
+        lastRight = encoders[1];
+
+        Pose p = pose.get();
+        x = p.getX();
+        y = p.getY();
+        heading = p.getHeading();
+        travelled = p.getTravelled();
+        last = scheduler.nanoTime();
+
+        task = scheduler.scheduleAtFixedRate(this::sample, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    private void sample() {
+        long now = scheduler.nanoTime();
+
+        // Fell behind (e.g. a slow serial read); skip the runs a fixed rate would burst to catch up
+        if (now - last < period / 2)
+            return;
+
+        long start = System.nanoTime();
+        robot.readEncoders(encoders);
+        int left = encoders[0];
+        int right = encoders[1];
+
+        // The counters wrap at 16 bits; a short difference is right as long as a wheel
+        // turns less than half the range between samples
+        double dl = (short) (left - lastLeft) / TICKS_PER_METER;
+        double dr = (short) (right - lastRight) / TICKS_PER_METER;
+
+        lastLeft = left;
+        lastRight = right;
+        leftEncoder = left;
+        rightEncoder = right;
+
+        // Differential drive, integrated at the midpoint heading
+        double ds = (dl + dr) / 2;
+        double dh = (dr - dl) / WHEELBASE;
+
+        x += ds * Math.cos(heading + dh / 2);
+        y += ds * Math.sin(heading + dh / 2);
+        heading += dh;
+        travelled += ds;
+
+        double dt = (now - last) / 1e9;
+        last = now;
+
+        Pose p = new Pose(now, x, y, heading, travelled, ds / dt, dh / dt);
+        pose.set(p);
+
+        check(p);
+        sampleTime.recordSince(start);
+    }
+
+    private void check(Pose p) {
+        Goal g = goal.get();
+
+        if (g == null)
+            return;
+
+        double covered = g.turn ? p.getHeading() - g.start : p.getTravelled() - g.start;
+
+        // Leave a goal set in the meantime alone
+        if (Math.abs(covered) < g.target || !goal.compareAndSet(g, null))
+            return;
+
+        g.reached = true;
+
+        if (g.action != null)
+            g.action.run();
+    }
+
+    // Drive meters either way from the given travelled value, then run the action on the sample that
+    // gets there; zero or less is reached on the next sample. Replaces any previous goal.
+    public Goal travel(double from, double meters, Runnable action) {
+        Goal g = new Goal(false, from, meters, action);
+        goal.set(g);
+        return g;
+    }
+
+    public Goal travel(double meters, Runnable action) {
+        return travel(pose.get().getTravelled(), meters, action);
+    }
+
+    // Turn |radians| either way from the current heading, then run the action on the sample that gets there
+    public Goal turn(double radians, Runnable action) {
+        Goal g = new Goal(true, pose.get().getHeading(), Math.abs(radians), action);
+        goal.set(g);
+        return g;
+    }
+
+    public void cancelGoal() {
+        goal.set(null);
+    }
+
+    public Pose getPose() {
+        return pose.get();
+    }
+
+    public int getLeftEncoder() {
+        return leftEncoder;
+    }
+
+    public int getRightEncoder() {
+        return rightEncoder;
+    }
+
+    public synchronized void stop() {
+        if (task == null)
+            return;
+
+        task.cancel();
+        task = null;
+    }
+}
@@ -0,0 +1,111 @@
+package com.company;
+
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class ParallelThreshold {
+    private final ForkJoinPool pool;
+    private final Band[] bands;
+
+    // Shared inputs for the current frame
+    private Mat src;
+    private Mat mask;
+    private Scalar minGreen;
+    private Scalar maxGreen;
+    private Mat strEl;
+    private int halo;
+
+    private final RecursiveAction all = new RecursiveAction() {
+        @Override
+        protected void compute() {
+            for (Band b: bands)
+                b.reinitialize();
+
+            invokeAll(bands);
+        }
+    };
+
+    ParallelThreshold(ForkJoinPool pool, int count) {
+        this.pool = pool;
+
+        bands = new Band[count];
+
+        for (int i = 0; i < count; i++)
+            bands[i] = new Band(i);
+    }
+
+    ParallelThreshold() {
+        this(ForkJoinPool.commonPool(), Runtime.getRuntime().availableProcessors());
+    }
+
+    // Same result as cvtColor -> inRange -> close -> open on the whole frame, computed in horizontal bands
+    public void apply(Mat src, Mat mask, Scalar minGreen, Scalar maxGreen, Mat strEl) {
+        this.src = src;
+        this.mask = mask;
+        this.minGreen = minGreen;
+        this.maxGreen = maxGreen;
+        this.strEl = strEl;
+
+        halo = halo(strEl);
+
+        all.reinitialize();
+        pool.invoke(all);
+    }
+
+    // Not worth splitting when the halo rows would outweigh the band itself
+    public boolean worthwhile(int rows, Mat strEl) {
+        return rows / bands.length > 2 * halo(strEl);
+    }
+
+    private static int halo(Mat strEl) {
+        // Close then open is four passes, each reaching one kernel radius further
+        return 4 * (Math.max(strEl.rows(), strEl.cols()) / 2);
+    }
+
+    // Never serialized; it only borrows RecursiveAction's fork/join plumbing
+    @SuppressWarnings("serial")
+    private class Band extends RecursiveAction {
+        private final int index;
+
+        // Private buffers covering the band plus its halo rows
+        private final Mat hsv = new Mat();
+        private final Mat thresh = new Mat();
+
+        Band(int index) {
+            this.index = index;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = src.rows();
+            int r0 = index * rows / bands.length;
+            int r1 = (index + 1) * rows / bands.length;
+
+            if (r0 == r1)
+                return;
+
+            int e0 = Math.max(0, r0 - halo);
+            int e1 = Math.min(rows, r1 + halo);
+
+            Mat in = src.rowRange(e0, e1);
+            Imgproc.cvtColor(in, hsv, Imgproc.COLOR_RGB2HSV);
+            in.release();
+
+            Core.inRange(hsv, minGreen, maxGreen, thresh);
+
+            // The band is its own Mat, so its edges behave like image edges; the halo hides that
+            Imgproc.morphologyEx(thresh, thresh, Imgproc.MORPH_CLOSE, strEl);
+            Imgproc.morphologyEx(thresh, thresh, Imgproc.MORPH_OPEN, strEl);
+
+            // Copy back only the rows this band owns
+            Mat owned = thresh.rowRange(r0 - e0, r1 - e0);
+            Mat out = mask.rowRange(r0, r1);
+            owned.copyTo(out);
+            owned.release();
+            out.release();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.company;
+
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+// Holds the current Parameters snapshot. Readers pay one volatile read; writers (UI listeners,
+// the config file watcher, JMX) serialise on the registry and publish a whole new snapshot.
+public class ParameterRegistry implements ParameterRegistryMXBean {
+    private volatile Parameters current = Parameters.DEFAULTS;
+
+    private Path file = null;
+    private WatchService watcher = null;
+    private Scheduler.Task watchTask = null;
+
+    // How often the watcher is polled for changes to the file
+    private static final long WATCH_PERIOD = 500; // ms
+
+    private ObjectName objectName = null;
+
+    public Parameters get() {
+        return current;
+    }
+
+    // Throws IllegalArgumentException, leaving the current snapshot alone, for unknown keys or bad values
+    public synchronized void set(String key, String value) {
+        current = current.with(key, value);
+    }
+
+    // Publishes a whole snapshot at once, e.g. one combination of a parameter sweep
+    public synchronized void set(Parameters p) {
+        current = p;
+    }
+
+    public Map<String, String> getParameters() {
+        return current.toMap();
+    }
+
+    public void setParameter(String key, String value) {
+        set(key, value);
+    }
+
+    // Applies every key in the file that differs from the current value, keeping the rest
+    public synchronized void load(Path path) throws IOException {
+        Properties props = new Properties();
+
+        try (InputStream in = Files.newInputStream(path)) {
+            props.load(in);
+        }
+
+        Parameters p = current;
+
+        for (String key: props.stringPropertyNames()) {
+            try {
+                p = p.with(key, props.getProperty(key));
+            } catch (IllegalArgumentException e) {
+                System.out.println(path + ": " + e.getMessage());
+            }
+        }
+
+        current = p;
+    }
+
+    public void reload() {
+        if (file == null)
+            return;
+
+        try {
+            load(file);
+        } catch (IOException e) {
+            System.out.println("Could not read " + file + ": " + e.getMessage());
+        }
+    }
+
+    // Loads the file if it exists and reloads it whenever it changes, checked by a task on the scheduler
+    public void watch(Path path, Scheduler scheduler) {
+        unwatch();
+
+        file = path.toAbsolutePath();
+
+        if (Files.exists(file))
+            reload();
+
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            System.out.println("Could not watch " + file + ": " + e.getMessage());
+            return;
+        }
+
+        final WatchService w = watcher;
+
+        watchTask = scheduler.scheduleAtFixedRate(() -> poll(w), WATCH_PERIOD, WATCH_PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    // Never waits; take() would hold a pool thread for as long as the file stays unchanged
+    private void poll(WatchService w) {
+        try {
+            WatchKey key;
+
+            while ((key = w.poll()) != null) {
+                for (WatchEvent<?> event: key.pollEvents()) {
+                    if (file.getFileName().equals(event.context()))
+                        reload();
+                }
+
+                key.reset();
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Stopped
+        }
+    }
+
+    public void unwatch() {
+        if (watcher == null)
+            return;
+
+        watchTask.cancel();
+        watchTask = null;
+
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        watcher = null;
+    }
+
+    public void register(String name) {
+        try {
+            objectName = new ObjectName("com.company:type=Parameters,name=" + name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (Exception e) {
+            System.out.println("Could not register parameters over JMX: " + e.getMessage());
+            objectName = null;
+        }
+    }
+
+    public void unregister() {
+        unwatch();
+
+        if (objectName == null)
+            return;
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        objectName = null;
+    }
+}
@@ -0,0 +1,11 @@
+package com.company;
+
+import java.util.Map;
+
+public interface ParameterRegistryMXBean {
+    Map<String, String> getParameters();
+
+    void setParameter(String key, String value);
+
+    void reload();
+}
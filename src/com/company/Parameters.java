@@ -0,0 +1,198 @@
+package com.company;
+
+import org.opencv.core.Scalar;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Immutable, already-parsed set of tunable values. Changing one produces a new snapshot, so the
+// camera and control threads can hold on to the one they read without locking or re-parsing.
+public final class Parameters {
+    static final Parameters DEFAULTS = new Parameters();
+
+    // Vision
+    private double[] minHsv = { 30, 60, 85 };
+    private double[] maxHsv = { 50, 200, 255 };
+    private int kernelSize = 15; // px, at full resolution
+    private double epsilon = 0.01; // approxPolyDP tolerance, as a fraction of the perimeter
+    private int visibilityTimeout = 90; // frames missing before the target counts as lost
+
+    // Derived area-distance relation for the 10x10 cm square: scale * (area / 1000)^exponent
+    private double distanceScale = 1.6275;
+    private double distanceExponent = -0.517;
+
+    // Following
+    private double range = 2000; // mm
+    private double offset = 300; // mm, manual camera offset
+    private double gainAhead = 0.1; // P law, person further than the range
+    private double gainBehind = 0.2; // P law, person closer than the range
+    private double kp = 0.5;
+    private double kd = 0.3;
+    private short maxSpeed = 400; // mm/s
+
+    private Parameters() {
+    }
+
+    private Parameters copy() {
+        Parameters p = new Parameters();
+
+        p.minHsv = minHsv;
+        p.maxHsv = maxHsv;
+        p.kernelSize = kernelSize;
+        p.epsilon = epsilon;
+        p.visibilityTimeout = visibilityTimeout;
+        p.distanceScale = distanceScale;
+        p.distanceExponent = distanceExponent;
+        p.range = range;
+        p.offset = offset;
+        p.gainAhead = gainAhead;
+        p.gainBehind = gainBehind;
+        p.kp = kp;
+        p.kd = kd;
+        p.maxSpeed = maxSpeed;
+
+        return p;
+    }
+
+    // A copy with one value changed; throws IllegalArgumentException for unknown keys or bad values
+    public Parameters with(String key, String value) {
+        Parameters p = copy();
+        value = value.trim();
+
+        try {
+            switch (key) {
+                case "vision.minHsv": p.minHsv = parseHsv(value); break;
+                case "vision.maxHsv": p.maxHsv = parseHsv(value); break;
+                case "vision.kernel": p.kernelSize = positive(Integer.parseInt(value)); break;
+                case "vision.epsilon": p.epsilon = positive(Double.parseDouble(value)); break;
+                case "vision.visibilityTimeout": p.visibilityTimeout = positive(Integer.parseInt(value)); break;
+                case "distance.scale": p.distanceScale = positive(Double.parseDouble(value)); break;
+                case "distance.exponent": p.distanceExponent = Double.parseDouble(value); break;
+                case "follow.range": p.range = positive(Double.parseDouble(value)); break;
+                case "follow.offset": p.offset = Double.parseDouble(value); break;
+                case "follow.gainAhead": p.gainAhead = Double.parseDouble(value); break;
+                case "follow.gainBehind": p.gainBehind = Double.parseDouble(value); break;
+                case "follow.kp": p.kp = Double.parseDouble(value); break;
+                case "follow.kd": p.kd = Double.parseDouble(value); break;
+                case "follow.maxSpeed": p.maxSpeed = (short) positive(Short.parseShort(value)); break;
+                default: throw new IllegalArgumentException("Unknown parameter " + key);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad value for " + key + ": " + value);
+        }
+
+        return p;
+    }
+
+    private static double[] parseHsv(String text) {
+        String[] s = text.split(",");
+
+        if (s.length != 3)
+            throw new IllegalArgumentException("Expected H,S,V: " + text);
+
+        double[] v = new double[3];
+
+        for (int i = 0; i < 3; i++)
+            v[i] = Integer.parseInt(s[i].trim());
+
+        return v;
+    }
+
+    private static int positive(int v) {
+        if (v <= 0)
+            throw new IllegalArgumentException("Must be positive: " + v);
+
+        return v;
+    }
+
+    private static double positive(double v) {
+        if (v <= 0)
+            throw new IllegalArgumentException("Must be positive: " + v);
+
+        return v;
+    }
+
+    // Every value as text, in the same form with() accepts
+    public Map<String, String> toMap() {
+        Map<String, String> m = new LinkedHashMap<>();
+
+        m.put("vision.minHsv", formatHsv(minHsv));
+        m.put("vision.maxHsv", formatHsv(maxHsv));
+        m.put("vision.kernel", Integer.toString(kernelSize));
+        m.put("vision.epsilon", Double.toString(epsilon));
+        m.put("vision.visibilityTimeout", Integer.toString(visibilityTimeout));
+        m.put("distance.scale", Double.toString(distanceScale));
+        m.put("distance.exponent", Double.toString(distanceExponent));
+        m.put("follow.range", Double.toString(range));
+        m.put("follow.offset", Double.toString(offset));
+        m.put("follow.gainAhead", Double.toString(gainAhead));
+        m.put("follow.gainBehind", Double.toString(gainBehind));
+        m.put("follow.kp", Double.toString(kp));
+        m.put("follow.kd", Double.toString(kd));
+        m.put("follow.maxSpeed", Short.toString(maxSpeed));
+
+        return m;
+    }
+
+    private static String formatHsv(double[] v) {
+        return (int) v[0] + "," + (int) v[1] + "," + (int) v[2];
+    }
+
+    // Fill existing scalars, so the hot path does not allocate
+    public void getMinHsv(Scalar out) {
+        System.arraycopy(minHsv, 0, out.val, 0, 3);
+    }
+
+    public void getMaxHsv(Scalar out) {
+        System.arraycopy(maxHsv, 0, out.val, 0, 3);
+    }
+
+    public int getKernelSize() {
+        return kernelSize;
+    }
+
+    public double getEpsilon() {
+        return epsilon;
+    }
+
+    public int getVisibilityTimeout() {
+        return visibilityTimeout;
+    }
+
+    public double areaToDistance(double area) {
+        return distanceScale * Math.pow(area / 1000, distanceExponent);
+    }
+
+    // Inverse of areaToDistance, for rendering the square at a given distance
+    public double distanceToArea(double distance) {
+        return 1000 * Math.pow(distance / distanceScale, 1 / distanceExponent);
+    }
+
+    public double getRange() {
+        return range;
+    }
+
+    public double getOffset() {
+        return offset;
+    }
+
+    public double getGainAhead() {
+        return gainAhead;
+    }
+
+    public double getGainBehind() {
+        return gainBehind;
+    }
+
+    public double getKp() {
+        return kp;
+    }
+
+    public double getKd() {
+        return kd;
+    }
+
+    public short getMaxSpeed() {
+        return maxSpeed;
+    }
+}
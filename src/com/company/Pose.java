@@ -0,0 +1,58 @@
+package com.company;
+
+// Robot pose integrated from the wheel encoders at one sample. Immutable, so it can be shared freely.
+public final class Pose {
+    static final Pose ORIGIN = new Pose(0, 0, 0, 0, 0, 0, 0);
+
+    private final long time;
+    private final double x;
+    private final double y;
+    private final double heading;
+    private final double travelled;
+    private final double speed;
+    private final double turnRate;
+
+    Pose(long time, double x, double y, double heading, double travelled, double speed, double turnRate) {
+        this.time = time;
+        this.x = x;
+        this.y = y;
+        this.heading = heading;
+        this.travelled = travelled;
+        this.speed = speed;
+        this.turnRate = turnRate;
+    }
+
+    // Clock time of the encoder sample, from the scheduler the odometry runs on
+    public long getTime() {
+        return time;
+    }
+
+    // m, from where odometry started; x points along the starting heading
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    // rad, counter-clockwise and not wrapped, so differences count whole turns
+    public double getHeading() {
+        return heading;
+    }
+
+    // m driven along the track, backwards counting negative
+    public double getTravelled() {
+        return travelled;
+    }
+
+    // m/s
+    public double getSpeed() {
+        return speed;
+    }
+
+    // rad/s
+    public double getTurnRate() {
+        return turnRate;
+    }
+}
@@ -0,0 +1,148 @@
+package com.company;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import javafx.application.Platform;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.util.Callback;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Draws the pipeline's output into the GUI's ImageViews on the FX thread
+public class PreviewRenderer implements PreviewSink {
+    private final ImageView view;
+    private final ImageView faceView;
+    private final Image happyFace;
+    private volatile boolean happy = false;
+
+    // Switched by the user, and by the view being shown
+    private volatile boolean enabled = true;
+    private volatile boolean showing = true;
+    private volatile long minInterval = TimeUnit.SECONDS.toNanos(1) / 15;
+    private long lastFrame;
+
+    // Set while the FX thread still owns bgra
+    private final AtomicBoolean pending = new AtomicBoolean(false);
+    private final Runnable draw = this::draw;
+
+    // Frames and masks are converted to the one format a PixelBuffer takes, on the camera thread
+    private final Mat bgra = new Mat();
+
+    // Only touched on the FX thread. The image shares the array behind the PixelBuffer, so the Mat
+    // is copied straight into it. OpenCV 3.2 can't wrap a Java buffer in a Mat, so that copy stays.
+    private byte[] pixels = new byte[0];
+    private PixelBuffer<ByteBuffer> buffer = null;
+    private WritableImage image = null;
+    private final Callback<PixelBuffer<ByteBuffer>, Rectangle2D> copy = b -> {
+        bgra.get(0, 0, pixels);
+        return null;
+    };
+
+    PreviewRenderer(ImageView view, ImageView faceView) {
+        this.view = view;
+        this.faceView = faceView;
+
+        // Loaded once rather than on every control step
+        happyFace = faceView != null ? new Image("file:images/happy.jpg") : null;
+
+        lastFrame = System.nanoTime() - minInterval;
+
+        // Skip preview work entirely while the view is hidden or detached
+        view.visibleProperty().addListener((obs, was, is) -> updateShowing());
+        view.sceneProperty().addListener((obs, was, is) -> updateShowing());
+        updateShowing();
+    }
+
+    public boolean show(Mat m) {
+        if (!enabled || !showing)
+            return false;
+
+        long now = System.nanoTime();
+
+        if (now - lastFrame < minInterval)
+            return false;
+
+        // Drop the frame if the last one hasn't been drawn yet
+        if (!pending.compareAndSet(false, true))
+            return false;
+
+        lastFrame = now;
+
+        // Opaque, so already premultiplied
+        Imgproc.cvtColor(m, bgra, m.channels() == 1 ? Imgproc.COLOR_GRAY2BGRA : Imgproc.COLOR_BGR2BGRA);
+
+        Platform.runLater(draw);
+
+        return true;
+    }
+
+    private void draw() {
+        // Switched off after this frame was posted
+        if (!enabled) {
+            pending.set(false);
+            return;
+        }
+
+        int width = bgra.cols();
+        int height = bgra.rows();
+
+        if (image == null || (int) image.getWidth() != width || (int) image.getHeight() != height) {
+            pixels = new byte[4 * width * height];
+            buffer = new PixelBuffer<>(width, height, ByteBuffer.wrap(pixels), PixelFormat.getByteBgraPreInstance());
+            image = new WritableImage(buffer);
+            view.setImage(image);
+        }
+
+        // The buffer may only change inside this callback on the FX thread; null marks all of it dirty
+        buffer.updateBuffer(copy);
+
+        pending.set(false);
+    }
+
+    public void clear() {
+        if (!Platform.isFxApplicationThread()) {
+            Platform.runLater(this::clear);
+            return;
+        }
+
+        image = null;
+        buffer = null;
+        view.setImage(null);
+    }
+
+    public void showFace(boolean happy) {
+        // Called on every control step; only changes need to reach the FX thread
+        if (faceView == null || happy == this.happy)
+            return;
+
+        this.happy = happy;
+
+        Image image = happy ? happyFace : null;
+        Platform.runLater(() -> faceView.setImage(image));
+    }
+
+    private void updateShowing() {
+        showing = view.isVisible() && view.getScene() != null;
+    }
+
+    // Turned off, the last frame is cleared rather than left looking live
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+
+        if (!enabled)
+            clear();
+    }
+
+    // Zero or less stops drawing frames altogether
+    public void setPreviewFps(double fps) {
+        minInterval = fps > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / fps) : Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,29 @@
+package com.company;
+
+import org.opencv.core.Mat;
+
+// Where the camera pipeline sends what it would display: the current mask or frame, and the
+// robot's face. The GUI draws them in its ImageViews; headless runs discard them, or save or
+// serve a low-rate snapshot.
+public interface PreviewSink {
+    PreviewSink NONE = new PreviewSink() {
+        public boolean show(Mat m) {
+            return false;
+        }
+
+        public void clear() {
+        }
+    };
+
+    // Called in the processing step; copy what is needed and return quickly.
+    // True when the frame was taken, false when it was dropped or rate-limited.
+    boolean show(Mat m);
+
+    void clear();
+
+    default void showFace(boolean happy) {
+    }
+
+    default void close() {
+    }
+}
@@ -0,0 +1,83 @@
+package com.company;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Scheduler on the wall clock, backed by a ScheduledExecutorService
+public class RealTimeScheduler implements Scheduler {
+    private final ScheduledExecutorService executor;
+    private final boolean owned;
+
+    // Uses an executor shared with others; shutdown() leaves it running
+    RealTimeScheduler(ScheduledExecutorService executor) {
+        this(executor, false);
+    }
+
+    RealTimeScheduler(ScheduledExecutorService executor, boolean owned) {
+        this.executor = executor;
+        this.owned = owned;
+    }
+
+    // A pool of daemon threads named name-1, name-2, ...
+    static RealTimeScheduler pool(String name, int threads) {
+        AtomicInteger count = new AtomicInteger();
+
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(threads, r -> {
+            Thread t = new Thread(r, threads == 1 ? name : name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        // Cancelled tasks don't stay queued, and nothing delayed runs after shutdown
+        executor.setRemoveOnCancelPolicy(true);
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+
+        return new RealTimeScheduler(executor, true);
+    }
+
+    // Same as Executors.newScheduledThreadPool: threads that keep the JVM alive
+    static RealTimeScheduler fixed(int threads) {
+        return new RealTimeScheduler(Executors.newScheduledThreadPool(threads), true);
+    }
+
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    public Task schedule(Runnable task, long delay, TimeUnit unit) {
+        return wrap(executor.schedule(task, delay, unit));
+    }
+
+    public Task scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        return wrap(executor.scheduleAtFixedRate(task, initialDelay, period, unit));
+    }
+
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    public Scheduler dedicated(String name) {
+        return pool(name, 1);
+    }
+
+    public void shutdown() {
+        if (!owned)
+            return;
+
+        executor.shutdownNow();
+
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static Task wrap(ScheduledFuture<?> f) {
+        return () -> f.cancel(false);
+    }
+}
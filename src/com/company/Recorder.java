@@ -0,0 +1,131 @@
+package com.company;
+
+import org.opencv.core.Mat;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class Recorder {
+    // File layout: header, then records of [type:byte][time:long][payload].
+    // A zero type byte marks the end, since freshly mapped regions are zero-filled.
+    static final int MAGIC = 0x4B524543; // "KREC"
+    static final int VERSION = 1;
+    static final int HEADER = 8;
+
+    static final byte FRAME = 1;    // rows, cols, type, length, pixels
+    static final byte ENCODERS = 2; // left, right
+    static final byte COMMAND = 3;  // speed, radius
+
+    // Files grow one mapped region at a time
+    static final long REGION = 64L << 20;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private MappedByteBuffer region;
+    private long regionStart;
+
+    private final long start;
+    private byte[] pixels = new byte[0];
+    private boolean closed = false;
+
+    Recorder(String path) throws IOException {
+        this(path, Clock.SYSTEM);
+    }
+
+    // Times are recorded relative to now on the clock, which the stamps passed in must come from
+    Recorder(String path, Clock clock) throws IOException {
+        start = clock.nanoTime();
+        file = new RandomAccessFile(path, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+
+        map(0, HEADER);
+        region.putInt(MAGIC);
+        region.putInt(VERSION);
+    }
+
+    public synchronized void frame(long time, Mat m) {
+        int length = (int) m.total() * m.channels();
+
+        if (closed || !reserve(1 + 8 + 16 + length))
+            return;
+
+        if (pixels.length != length)
+            pixels = new byte[length];
+
+        m.get(0, 0, pixels);
+
+        region.put(FRAME);
+        region.putLong(time - start);
+        region.putInt(m.rows());
+        region.putInt(m.cols());
+        region.putInt(m.type());
+        region.putInt(length);
+        region.put(pixels, 0, length);
+    }
+
+    public synchronized void encoders(long time, int left, int right) {
+        if (closed || !reserve(1 + 8 + 8))
+            return;
+
+        region.put(ENCODERS);
+        region.putLong(time - start);
+        region.putInt(left);
+        region.putInt(right);
+    }
+
+    public synchronized void command(long time, short speed, short radius) {
+        if (closed || !reserve(1 + 8 + 4))
+            return;
+
+        region.put(COMMAND);
+        region.putLong(time - start);
+        region.putShort(speed);
+        region.putShort(radius);
+    }
+
+    private boolean reserve(int size) {
+        if (region.remaining() >= size)
+            return true;
+
+        try {
+            map(regionStart + region.position(), size);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private void map(long position, int size) throws IOException {
+        regionStart = position;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(REGION, size));
+    }
+
+    public synchronized void close() {
+        if (closed)
+            return;
+
+        closed = true;
+
+        try {
+            region.force();
+            long end = regionStart + region.position();
+            region = null;
+
+            // Drop the unused tail of the last region; this fails on Windows while
+            // the mapping is still alive, in which case readers stop at the zero type byte
+            try {
+                channel.truncate(end);
+            } catch (IOException e) {
+                System.out.println("Recording left padded: " + e.getMessage());
+            }
+
+            file.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
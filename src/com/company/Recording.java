@@ -0,0 +1,157 @@
+package com.company;
+
+import org.opencv.core.Mat;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Sequential reader for files written by Recorder
+public class Recording {
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long size;
+
+    private MappedByteBuffer region;
+    private long regionStart;
+
+    // Current record
+    private byte type;
+    private long time;
+    private int a, b;
+    private int rows, cols, matType, length;
+    private byte[] pixels = new byte[0];
+
+    Recording(String path) throws IOException {
+        file = new RandomAccessFile(path, "r");
+        channel = file.getChannel();
+        size = channel.size();
+
+        map(0);
+
+        if (size < Recorder.HEADER || region.getInt() != Recorder.MAGIC)
+            throw new IOException("Not a recording: " + path);
+
+        if (region.getInt() != Recorder.VERSION)
+            throw new IOException("Unsupported recording version: " + path);
+    }
+
+    // Advances to the next record; false at the end of the recording
+    public boolean next() throws IOException {
+        if (!ensure(1 + 8))
+            return false;
+
+        type = region.get();
+
+        if (type == 0)
+            return false;
+
+        time = region.getLong();
+
+        switch (type) {
+            case Recorder.FRAME:
+                if (!ensure(16))
+                    return false;
+
+                rows = region.getInt();
+                cols = region.getInt();
+                matType = region.getInt();
+                length = region.getInt();
+
+                if (!ensure(length))
+                    return false;
+
+                if (pixels.length != length)
+                    pixels = new byte[length];
+
+                region.get(pixels, 0, length);
+                break;
+
+            case Recorder.ENCODERS:
+                if (!ensure(8))
+                    return false;
+
+                a = region.getInt();
+                b = region.getInt();
+                break;
+
+            case Recorder.COMMAND:
+                if (!ensure(4))
+                    return false;
+
+                a = region.getShort();
+                b = region.getShort();
+                break;
+
+            default:
+                throw new IOException("Corrupt recording: unknown record type " + type);
+        }
+
+        return true;
+    }
+
+    private boolean ensure(int bytes) throws IOException {
+        if (region.remaining() >= bytes)
+            return true;
+
+        long position = regionStart + region.position();
+
+        if (position + bytes > size)
+            return false;
+
+        map(position);
+        return true;
+    }
+
+    private void map(long position) throws IOException {
+        regionStart = position;
+        region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(Recorder.REGION, size - position));
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    // Nanoseconds since the recording started
+    public long getTime() {
+        return time;
+    }
+
+    public void getFrame(Mat m) {
+        m.create(rows, cols, matType);
+        m.put(0, 0, pixels);
+    }
+
+    public int getFrameWidth() {
+        return cols;
+    }
+
+    public int getFrameHeight() {
+        return rows;
+    }
+
+    public int getLeftEncoder() {
+        return a;
+    }
+
+    public int getRightEncoder() {
+        return b;
+    }
+
+    public short getSpeed() {
+        return (short) a;
+    }
+
+    public short getRadius() {
+        return (short) b;
+    }
+
+    public void close() {
+        try {
+            file.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.company;
+
+// Passes everything through to the robot, logging encoder reads and commands while a recorder is set
+public class RecordingRobot implements Robot {
+    private final Robot robot;
+    private final Clock clock;
+    private volatile Recorder recorder = null;
+
+    RecordingRobot(Robot robot) {
+        this(robot, Clock.SYSTEM);
+    }
+
+    RecordingRobot(Robot robot, Clock clock) {
+        this.robot = robot;
+        this.clock = clock;
+    }
+
+    public void setRecorder(Recorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public void baseControl(short speed, short radius) throws Exception {
+        Recorder r = recorder;
+
+        if (r != null)
+            r.command(clock.nanoTime(), speed, radius);
+
+        robot.baseControl(speed, radius);
+    }
+
+    // Only pairs are recorded: a single counter can't be replayed on its own
+    public void readEncoders(int[] out) {
+        robot.readEncoders(out);
+
+        Recorder r = recorder;
+
+        if (r != null)
+            r.encoders(clock.nanoTime(), out[0], out[1]);
+    }
+
+    public int getLeftEncoder() {
+        return robot.getLeftEncoder();
+    }
+
+    public int getRightEncoder() {
+        return robot.getRightEncoder();
+    }
+
+    public boolean isBlocking() {
+        return robot.isBlocking();
+    }
+}
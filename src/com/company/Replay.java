@@ -0,0 +1,216 @@
+package com.company;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Runs a recording through the camera pipeline without a GUI, robot or webcam.
+// Usage: Replay <file.krec> [--fast] [--task 1|2] [--duty-cycle] [--parallel-threshold] [--pyramid-level <n>] [--camera <file.krec>@x,y,yaw[,fov]]... | Replay <file.krec> --estimate
+// Each --camera adds a side camera fed from another recording, on its own pipeline, and prints the fused target.
+public class Replay {
+    public static void main(String[] args) throws InterruptedException, IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: Replay <file.krec> [--fast] [--task 1|2] [--duty-cycle] [--parallel-threshold] [--pyramid-level <n>] [--camera <file.krec>@x,y,yaw[,fov]]... | Replay <file.krec> --estimate");
+            return;
+        }
+
+        if (args.length > 1 && args[1].equals("--estimate")) {
+            estimate(args[0]);
+            return;
+        }
+
+        boolean fast = false;
+        boolean dutyCycle = false;
+        boolean parallel = false;
+        int pyramidLevel = 0;
+        int task = 1;
+        List<String> extra = new ArrayList<>();
+
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--fast"))
+                fast = true;
+            else if (args[i].equals("--duty-cycle"))
+                dutyCycle = true;
+            else if (args[i].equals("--parallel-threshold"))
+                parallel = true;
+            else if (args[i].equals("--pyramid-level") && i + 1 < args.length)
+                pyramidLevel = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--task") && i + 1 < args.length)
+                task = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--camera") && i + 1 < args.length)
+                extra.add(args[++i]);
+        }
+
+        Scheduler pool = RealTimeScheduler.pool("replay", 1);
+
+        Metrics metrics = new Metrics();
+        KobukiCamera camera = new KobukiCamera(PreviewSink.NONE, pool, metrics);
+        ReplaySource source = new ReplaySource(args[0], !fast);
+        camera.setSource(source);
+        camera.setDutyCycling(dutyCycle);
+        camera.setParallelThreshold(parallel);
+        camera.setPyramidLevel(pyramidLevel);
+
+        CameraFusion cameras = new CameraFusion();
+        cameras.add(camera, CameraMount.FRONT);
+
+        List<ReplaySource> sources = new ArrayList<>();
+        sources.add(source);
+
+        for (String spec : extra) {
+            int at = spec.lastIndexOf('@');
+
+            if (at < 0) {
+                System.out.println("Expected <file.krec>@x,y,yaw[,fov]: " + spec);
+                return;
+            }
+
+            ReplaySource s = new ReplaySource(spec.substring(0, at), !fast);
+            KobukiCamera c = new KobukiCamera(PreviewSink.NONE, pool, new Metrics());
+            c.setSource(s);
+            c.setDutyCycling(dutyCycle);
+            c.setParallelThreshold(parallel);
+            c.setPyramidLevel(pyramidLevel);
+
+            cameras.add(c, CameraMount.parse(spec.substring(at + 1)));
+            sources.add(s);
+        }
+
+        long start = System.nanoTime();
+        cameras.start(task);
+
+        // Wait until every captured frame has gone through each pipeline, sampling the fusion as a
+        // controller would
+        long fusedReads = 0, fusedDetections = 0;
+        FusedTarget fused = FusedTarget.NONE;
+
+        while (!finished(cameras, sources)) {
+            Thread.sleep(10);
+
+            fused = cameras.fuse();
+            fusedReads++;
+
+            if (fused.isDetected())
+                fusedDetections++;
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long total = 0;
+
+        for (int i = 0; i < cameras.size(); i++) {
+            KobukiCamera c = cameras.getCamera(i);
+            total += c.getProcessedFrames();
+
+            String name = cameras.size() > 1 ? "Camera " + i + ": " : "Frames: ";
+            System.out.println(name + c.getProcessedFrames() + " processed, " + c.getDroppedFrames() + " dropped");
+        }
+
+        System.out.println("Time: " + seconds + " s (" + total / seconds + " fps)");
+        Observation last = camera.getObservation();
+        System.out.println("Last distance: " + last.getDistance() + " m, visible: " + last.isVisible() + " (frame " + last.getSequence() + ")");
+
+        if (cameras.size() > 1) {
+            System.out.println("Fused: detected on " + fusedDetections + " of " + fusedReads + " reads; last at "
+                    + fused.getRange() + " m, bearing " + Math.toDegrees(fused.getBearing()) + " deg from " + fused.getCameras() + " camera(s)");
+        }
+
+        System.out.print(metrics.getSummary());
+
+        cameras.stop();
+        pool.shutdown();
+    }
+
+    private static boolean finished(CameraFusion cameras, List<ReplaySource> sources) {
+        for (int i = 0; i < cameras.size(); i++) {
+            KobukiCamera c = cameras.getCamera(i);
+
+            if (!sources.get(i).isFinished() || c.getProcessedFrames() + c.getDroppedFrames() < c.getCapturedFrames())
+                return false;
+        }
+
+        return true;
+    }
+
+    // Runs the detector and TargetEstimator over a recording on its own recorded clock, and compares
+    // the frame-to-frame jitter of the raw distance with the estimate's
+    private static void estimate(String path) throws IOException {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+
+        Recording recording = new Recording(path);
+        SquareDetector detector = new SquareDetector();
+        TargetEstimator estimator = new TargetEstimator();
+        Mat frame = new Mat();
+
+        Scalar minGreen = new Scalar(0, 0, 0);
+        Scalar maxGreen = new Scalar(0, 0, 0);
+        Parameters.DEFAULTS.getMinHsv(minGreen);
+        Parameters.DEFAULTS.getMaxHsv(maxGreen);
+
+        int lastLeft = 0, lastRight = 0;
+        long ticks = 0;
+        boolean started = false;
+
+        int detections = 0;
+        double lastRaw = 0, lastEstimate = 0;
+        double rawJitter = 0, estimateJitter = 0;
+
+        while (recording.next()) {
+            long time = recording.getTime();
+
+            switch (recording.getType()) {
+                case Recorder.ENCODERS:
+                    int left = recording.getLeftEncoder();
+                    int right = recording.getRightEncoder();
+
+                    if (started)
+                        ticks += ((short) (left - lastLeft) + (short) (right - lastRight)) / 2;
+
+                    lastLeft = left;
+                    lastRight = right;
+                    started = true;
+
+                    estimator.odometry(time, ticks / 11724.4165803);
+                    break;
+
+                case Recorder.FRAME:
+                    recording.getFrame(frame);
+
+                    if (detections == 0)
+                        detector.allocate(frame.cols(), frame.rows());
+
+                    MatOfPoint2f s = detector.find(frame, minGreen, maxGreen);
+
+                    if (s == null)
+                        break;
+
+                    double raw = KobukiCamera.areaToDistance(Imgproc.contourArea(s));
+                    estimator.measure(time, raw);
+                    double estimate = estimator.predict(time);
+
+                    if (detections > 0) {
+                        rawJitter += (raw - lastRaw) * (raw - lastRaw);
+                        estimateJitter += (estimate - lastEstimate) * (estimate - lastEstimate);
+                    }
+
+                    lastRaw = raw;
+                    lastEstimate = estimate;
+                    detections++;
+                    break;
+            }
+        }
+
+        recording.close();
+
+        int steps = Math.max(1, detections - 1);
+
+        System.out.println("Detections: " + detections + ", rejected by the estimator: " + estimator.getRejected());
+        System.out.println("Frame-to-frame RMS change: raw " + Math.sqrt(rawJitter / steps) + " m, estimated " + Math.sqrt(estimateJitter / steps) + " m");
+        System.out.println("Last: raw " + lastRaw + " m, estimated " + lastEstimate + " m, target speed " + estimator.getTargetSpeed() + " m/s");
+    }
+}
@@ -0,0 +1,39 @@
+package com.company;
+
+// Stand-in robot for replays: encoders follow the recording and commands go nowhere
+public class ReplayRobot implements Robot {
+    private final ReplaySource source;
+
+    private volatile short speed = 0;
+    private volatile short radius = 0;
+
+    ReplayRobot(ReplaySource source) {
+        this.source = source;
+    }
+
+    public void baseControl(short speed, short radius) {
+        this.speed = speed;
+        this.radius = radius;
+    }
+
+    public int getLeftEncoder() {
+        return source.getLeftEncoder();
+    }
+
+    public int getRightEncoder() {
+        return source.getRightEncoder();
+    }
+
+    public void readEncoders(int[] out) {
+        source.readEncoders(out);
+    }
+
+    // Last command issued during the replay, to compare against the recorded one
+    public short getSpeed() {
+        return speed;
+    }
+
+    public short getRadius() {
+        return radius;
+    }
+}
@@ -0,0 +1,175 @@
+package com.company;
+
+import org.opencv.core.Mat;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+// Feeds a recording back through the camera pipeline, in real time or as fast as possible. Given a
+// clock, frames are due at their recorded times on it instead of read() waiting for them, so a
+// replay can run on virtual time.
+public class ReplaySource implements FrameSource {
+    private final String path;
+    private final boolean realTime;
+    private final Clock clock; // null unless read on a schedule
+    private volatile boolean loop = false;
+
+    private Recording recording = null;
+    private long replayStart;
+    private boolean pending = false;
+
+    // Latest non-frame records seen before the current frame; both encoders in one long (left high,
+    // right low) so a reader never gets one from each of two records
+    private volatile long encoders = 0;
+    private volatile short speed = 0;
+    private volatile short radius = 0;
+
+    // Records read ahead of the pending frame, published when it is delivered
+    private int nextLeft, nextRight;
+    private short nextSpeed, nextRadius;
+
+    ReplaySource(String path, boolean realTime) {
+        this.path = path;
+        this.realTime = realTime;
+        this.clock = null;
+    }
+
+    ReplaySource(String path, Clock clock) {
+        this.path = path;
+        this.realTime = true;
+        this.clock = clock;
+    }
+
+    public boolean open() {
+        try {
+            recording = new Recording(path);
+
+            nextLeft = nextRight = 0;
+            nextSpeed = nextRadius = 0;
+
+            // Read ahead to the first frame so the resolution is known
+            pending = advance();
+            replayStart = now() - (pending ? recording.getTime() : 0);
+
+            return pending;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    public boolean read(Mat frame) {
+        if (!pending)
+            return false;
+
+        if (realTime && clock == null) {
+            long wait = replayStart + recording.getTime() - System.nanoTime();
+
+            if (wait > 0)
+                LockSupport.parkNanos(wait);
+        }
+
+        recording.getFrame(frame);
+
+        encoders = (long) nextLeft << 32 | nextRight & 0xFFFFFFFFL;
+        speed = nextSpeed;
+        radius = nextRadius;
+
+        try {
+            pending = advance();
+
+            // Start over from the first frame, which is then due straight away
+            if (!pending && loop) {
+                recording.close();
+                recording = new Recording(path);
+                pending = advance();
+                replayStart = now() - (pending ? recording.getTime() : 0);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            pending = false;
+        }
+
+        return true;
+    }
+
+    private long now() {
+        return clock != null ? clock.nanoTime() : System.nanoTime();
+    }
+
+    public long getNextFrameTime() {
+        return clock == null ? SELF_PACED : pending ? replayStart + recording.getTime() : clock.nanoTime();
+    }
+
+    // Moves to the next frame record, picking up sensor and command records on the way
+    private boolean advance() throws IOException {
+        while (recording.next()) {
+            switch (recording.getType()) {
+                case Recorder.FRAME:
+                    return true;
+                case Recorder.ENCODERS:
+                    nextLeft = recording.getLeftEncoder();
+                    nextRight = recording.getRightEncoder();
+                    break;
+                case Recorder.COMMAND:
+                    nextSpeed = recording.getSpeed();
+                    nextRadius = recording.getRadius();
+                    break;
+            }
+        }
+
+        return false;
+    }
+
+    // Plays the recording over and over, for load tests
+    public void setLoop(boolean loop) {
+        this.loop = loop;
+    }
+
+    public boolean isFinished() {
+        return !pending;
+    }
+
+    public int getWidth() {
+        return recording.getFrameWidth();
+    }
+
+    public int getHeight() {
+        return recording.getFrameHeight();
+    }
+
+    public boolean isLive() {
+        // Real-time replay behaves like a camera; fast replay must not drop frames
+        return realTime;
+    }
+
+    public int getLeftEncoder() {
+        return (int) (encoders >> 32);
+    }
+
+    public int getRightEncoder() {
+        return (int) encoders;
+    }
+
+    public void readEncoders(int[] out) {
+        long e = encoders;
+        out[0] = (int) (e >> 32);
+        out[1] = (int) e;
+    }
+
+    public short getRecordedSpeed() {
+        return speed;
+    }
+
+    public short getRecordedRadius() {
+        return radius;
+    }
+
+    public void release() {
+        if (recording != null)
+            recording.close();
+
+        recording = null;
+        pending = false;
+    }
+}
@@ -0,0 +1,21 @@
+package com.company;
+
+public interface Robot {
+    void baseControl(short speed, short radius) throws Exception;
+
+    int getLeftEncoder();
+
+    int getRightEncoder();
+
+    // Both encoders from one sample into out[0] (left) and out[1] (right). Robots whose counters can
+    // change between the two getters override this to read them together.
+    default void readEncoders(int[] out) {
+        out[0] = getLeftEncoder();
+        out[1] = getRightEncoder();
+    }
+
+    // True when baseControl waits on a device, like a serial port, and so needs a thread of its own
+    default boolean isBlocking() {
+        return false;
+    }
+}
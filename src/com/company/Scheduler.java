@@ -0,0 +1,27 @@
+package com.company;
+
+import java.util.concurrent.TimeUnit;
+
+// Where every timed task runs: control ticks, serial writes, encoder samples and camera frames.
+// RealTimeScheduler runs them on threads against the wall clock; VirtualScheduler runs them one at
+// a time in time order, jumping its clock straight to the next event, so runs are deterministic.
+public interface Scheduler extends Clock {
+    interface Task {
+        // Stops any further runs; a run already under way finishes
+        void cancel();
+    }
+
+    Task schedule(Runnable task, long delay, TimeUnit unit);
+
+    Task scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit);
+
+    void execute(Runnable task);
+
+    // For a component that needs a thread of its own in real time, like the serial writer or frame
+    // capture: a new single-thread scheduler on the same clock. Virtual time runs everything on one
+    // thread anyway, so a VirtualScheduler returns itself.
+    Scheduler dedicated(String name);
+
+    // Waits for a task under way to finish; tasks still queued never run
+    void shutdown();
+}
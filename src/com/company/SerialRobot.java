@@ -0,0 +1,27 @@
+package com.company;
+
+import edu.ycp.robotics.KobukiRobot;
+
+public class SerialRobot implements Robot {
+    private final KobukiRobot k;
+
+    SerialRobot(String port) {
+        k = new KobukiRobot(port);
+    }
+
+    public void baseControl(short speed, short radius) throws Exception {
+        k.baseControl(speed, radius);
+    }
+
+    public int getLeftEncoder() {
+        return k.getLeftEncoder();
+    }
+
+    public int getRightEncoder() {
+        return k.getRightEncoder();
+    }
+
+    public boolean isBlocking() {
+        return true;
+    }
+}
@@ -0,0 +1,169 @@
+package com.company;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+// Software Kobuki with the surface the controller uses. Base control commands take effect after
+// the serial link's latency, the wheels ramp toward the commanded speeds at a limited acceleration,
+// and the pose follows differential-drive kinematics. Encoders are 16-bit counters reported at the
+// feedback rate, so they roll over like the real ones.
+// Time comes from the given clock: Clock.SYSTEM makes it a drop-in robot, while a VirtualScheduler
+// or a simulation stepping its own clock runs it as fast as it likes.
+public class SimulatedKobuki implements Robot {
+    private static final long SUBSTEP = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final class Command {
+        final long due;
+        final short speed;
+        final short radius;
+
+        Command(long due, short speed, short radius) {
+            this.due = due;
+            this.speed = speed;
+            this.radius = radius;
+        }
+    }
+
+    private final Clock clock;
+
+    private long latency = TimeUnit.MILLISECONDS.toNanos(10); // command to wheels
+    private long feedbackPeriod = TimeUnit.MILLISECONDS.toNanos(20);
+    private double acceleration = 1.0; // m/s^2 per wheel
+
+    private final ArrayDeque<Command> pending = new ArrayDeque<>();
+
+    // World frame; x along the starting heading
+    private long time;
+    private double x = 0, y = 0, heading = 0, travelled = 0;
+    private double left = 0, right = 0; // m/s, actual wheel speeds
+    private double targetLeft = 0, targetRight = 0; // m/s, from the last command applied
+    private double leftTicks = 0, rightTicks = 0;
+
+    // Encoder values in the last feedback packet
+    private long lastFeedback;
+    private int leftEncoder = 0, rightEncoder = 0;
+
+    private long commands = 0;
+
+    SimulatedKobuki(Clock clock) {
+        this.clock = clock;
+        this.time = clock.nanoTime();
+        this.lastFeedback = time;
+    }
+
+    public synchronized void baseControl(short speed, short radius) {
+        long now = clock.nanoTime();
+        advance(now);
+
+        pending.add(new Command(now + latency, speed, radius));
+        commands++;
+    }
+
+    public synchronized int getLeftEncoder() {
+        advance(clock.nanoTime());
+        return leftEncoder;
+    }
+
+    public synchronized int getRightEncoder() {
+        advance(clock.nanoTime());
+        return rightEncoder;
+    }
+
+    public synchronized void readEncoders(int[] out) {
+        advance(clock.nanoTime());
+        out[0] = leftEncoder;
+        out[1] = rightEncoder;
+    }
+
+    // Integrates up to now in substeps, applying commands as they come due
+    private void advance(long now) {
+        while (time < now) {
+            Command c = pending.peek();
+
+            if (c != null && c.due <= time) {
+                pending.poll();
+                apply(c);
+                continue;
+            }
+
+            long end = Math.min(now, time + SUBSTEP);
+
+            if (c != null)
+                end = Math.min(end, c.due);
+
+            step((end - time) / 1e9);
+            time = end;
+
+            // A feedback packet every period, with the counters as they were then
+            if (time - lastFeedback >= feedbackPeriod) {
+                lastFeedback = time;
+                leftEncoder = (int) Math.floor(leftTicks) & 0xFFFF;
+                rightEncoder = (int) Math.floor(rightTicks) & 0xFFFF;
+            }
+        }
+    }
+
+    // Wheel speeds for the Kobuki's speed/radius command: radius 0 drives straight, 1 spins on the spot
+    private void apply(Command c) {
+        double v = c.speed / 1000.0;
+        double half = Odometry.WHEELBASE / 2;
+
+        if (c.radius == 0) {
+            targetLeft = v;
+            targetRight = v;
+        } else if (c.radius == 1) {
+            targetLeft = -v;
+            targetRight = v;
+        } else {
+            double r = c.radius / 1000.0;
+            targetLeft = v * (r - half) / r;
+            targetRight = v * (r + half) / r;
+        }
+    }
+
+    private void step(double dt) {
+        double dv = acceleration * dt;
+
+        left += Math.max(-dv, Math.min(dv, targetLeft - left));
+        right += Math.max(-dv, Math.min(dv, targetRight - right));
+
+        double dl = left * dt;
+        double dr = right * dt;
+        double ds = (dl + dr) / 2;
+        double dh = (dr - dl) / Odometry.WHEELBASE;
+
+        x += ds * Math.cos(heading + dh / 2);
+        y += ds * Math.sin(heading + dh / 2);
+        heading += dh;
+        travelled += ds;
+
+        leftTicks += dl * Odometry.TICKS_PER_METER;
+        rightTicks += dr * Odometry.TICKS_PER_METER;
+    }
+
+    // True pose in the world frame, brought up to the clock
+    public synchronized Pose getPose() {
+        advance(clock.nanoTime());
+        return new Pose(time, x, y, heading, travelled, (left + right) / 2, (right - left) / Odometry.WHEELBASE);
+    }
+
+    public synchronized long getCommands() {
+        return commands;
+    }
+
+    // Start the counters somewhere else, e.g. just below the rollover
+    public synchronized void setEncoders(int left, int right) {
+        leftTicks = left;
+        rightTicks = right;
+        leftEncoder = left & 0xFFFF;
+        rightEncoder = right & 0xFFFF;
+    }
+
+    public synchronized void setLatency(long millis) {
+        latency = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    public synchronized void setAcceleration(double acceleration) {
+        this.acceleration = acceleration;
+    }
+}
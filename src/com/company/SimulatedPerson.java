@@ -0,0 +1,64 @@
+package com.company;
+
+import java.util.concurrent.TimeUnit;
+
+// The person being followed, in the simulated robot's world frame: stands still for a moment,
+// walks straight ahead at a constant speed, optionally turns a corner, and stops after a while.
+// Immutable; the position is a function of time.
+public final class SimulatedPerson {
+    private final long start; // clock time the scenario starts
+    private final double startX; // m ahead of the robot
+    private final long wait; // ns before walking off
+    private final double speed; // m/s
+    private final double turnAfter; // m walked before the corner; 0 for none
+    private final double turn; // rad, counter-clockwise
+    private final double walk; // m walked in total
+
+    SimulatedPerson(long start, double startX, double waitSeconds, double speed, double turnAfter, double turn, double walk) {
+        this.start = start;
+        this.startX = startX;
+        this.wait = (long) (waitSeconds * TimeUnit.SECONDS.toNanos(1));
+        this.speed = speed;
+        this.turnAfter = turnAfter;
+        this.turn = turn;
+        this.walk = walk;
+    }
+
+    // Task 1: 2.3 m ahead, walks 5 m straight
+    static SimulatedPerson straight(long start) {
+        return new SimulatedPerson(start, 2.3, 2, 0.3, 0, 0, 5);
+    }
+
+    // Task 2: the same, but turns left after 3 m
+    static SimulatedPerson corner(long start) {
+        return new SimulatedPerson(start, 2.3, 2, 0.3, 3, Math.PI / 2, 5);
+    }
+
+    private double walked(long time) {
+        double t = (time - start - wait) / 1e9;
+        return Math.max(0, Math.min(walk, t * speed));
+    }
+
+    public double getX(long time) {
+        double s = walked(time);
+
+        if (turnAfter <= 0 || s <= turnAfter)
+            return startX + s;
+
+        return startX + turnAfter + (s - turnAfter) * Math.cos(turn);
+    }
+
+    public double getY(long time) {
+        double s = walked(time);
+
+        if (turnAfter <= 0 || s <= turnAfter)
+            return 0;
+
+        return (s - turnAfter) * Math.sin(turn);
+    }
+
+    // Done walking
+    public boolean isFinished(long time) {
+        return walked(time) >= walk;
+    }
+}
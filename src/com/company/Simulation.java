@@ -0,0 +1,216 @@
+package com.company;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Closed-loop runs of the real controller against SimulatedKobuki and a walking person, each on its
+// own VirtualScheduler, so as fast as the CPU allows and the same every time. The whole task runs:
+// follow gains, Task 2's overshoot, scans and rotations, with the camera handing over exact sightings
+// plus noise, or rendered frames through the detector with --vision. Any registry parameter can be
+// swept over a range; every combination runs (in parallel) and the best are listed by how well the
+// distance was held.
+// Usage: Simulation [--sweep key=from:to:step]... [--task 1|2] [--mode P|PD|FEED_FORWARD] [--predictive] [--vision]
+//                   [--seconds 15] [--repeat 1] [--latency 10] [--noise 0.02] [--person-speed 0.3] [--top 10]
+// e.g.   Simulation --mode PD --sweep follow.kp=0.1:1.5:0.1 --sweep follow.kd=0:1:0.1
+public class Simulation {
+    private static final long FRAME_PERIOD = 33; // ms, how often the distance is scored
+
+    // Score from when the person has been walking for a while
+    private static final long SETTLED = TimeUnit.SECONDS.toNanos(3);
+
+    private static final class Settings {
+        int task = 1;
+        FollowController.Mode mode = FollowController.Mode.P;
+        boolean predictive = false;
+        boolean vision = false;
+        long duration = TimeUnit.SECONDS.toNanos(15);
+        long latency = 10; // ms, serial
+        double personSpeed = 0.3; // m/s, 5 m in under 20 s
+        double noise = 0.02; // relative distance error without vision
+    }
+
+    private static final class Result {
+        final String label;
+        final double rms; // m, distance error
+        final double closest; // m
+        final double lost; // fraction of the scored time the person was out of view
+        final double odometryError; // m, the controller's odometry vs the true path
+
+        Result(String label, double rms, double closest, double lost, double odometryError) {
+            this.label = label;
+            this.rms = rms;
+            this.closest = closest;
+            this.lost = lost;
+            this.odometryError = odometryError;
+        }
+    }
+
+    // True distance to the person, sampled on the run's clock
+    private static final class Score {
+        double squared = 0, closest = Double.MAX_VALUE;
+        long scored = 0, samples = 0;
+    }
+
+    // JMX beans are named after the robot, so parallel runs need distinct names
+    private static final AtomicInteger names = new AtomicInteger();
+
+    public static void main(String[] args) {
+        Settings settings = new Settings();
+        List<String> sweeps = new ArrayList<>();
+        int repeat = 1;
+        int top = 10;
+
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+
+            if (a.equals("--predictive"))
+                settings.predictive = true;
+            else if (a.equals("--vision"))
+                settings.vision = true;
+            else if (i + 1 >= args.length)
+                break;
+            else if (a.equals("--sweep"))
+                sweeps.add(args[++i]);
+            else if (a.equals("--task"))
+                settings.task = Integer.parseInt(args[++i]);
+            else if (a.equals("--mode"))
+                settings.mode = FollowController.Mode.valueOf(args[++i]);
+            else if (a.equals("--seconds"))
+                settings.duration = (long) (Double.parseDouble(args[++i]) * TimeUnit.SECONDS.toNanos(1));
+            else if (a.equals("--repeat"))
+                repeat = Integer.parseInt(args[++i]);
+            else if (a.equals("--latency"))
+                settings.latency = Long.parseLong(args[++i]);
+            else if (a.equals("--noise"))
+                settings.noise = Double.parseDouble(args[++i]);
+            else if (a.equals("--person-speed"))
+                settings.personSpeed = Double.parseDouble(args[++i]);
+            else if (a.equals("--top"))
+                top = Integer.parseInt(args[++i]);
+        }
+
+        // Every combination of the swept values, each with its label
+        List<Parameters> combinations = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        combinations.add(Parameters.DEFAULTS);
+        labels.add("");
+
+        for (String sweep : sweeps) {
+            int eq = sweep.indexOf('=');
+            String key = sweep.substring(0, eq);
+            String[] range = sweep.substring(eq + 1).split(":");
+            double from = Double.parseDouble(range[0]), to = Double.parseDouble(range[1]), step = Double.parseDouble(range[2]);
+
+            List<Parameters> next = new ArrayList<>();
+            List<String> nextLabels = new ArrayList<>();
+
+            for (int c = 0; c < combinations.size(); c++) {
+                for (int k = 0; from + k * step <= to + step / 2; k++) {
+                    double v = Math.round((from + k * step) * 1e6) / 1e6;
+                    String value = v == Math.rint(v) ? Long.toString((long) v) : Double.toString(v);
+
+                    next.add(combinations.get(c).with(key, value));
+                    nextLabels.add(labels.get(c) + key + "=" + value + " ");
+                }
+            }
+
+            combinations = next;
+            labels = nextLabels;
+        }
+
+        final List<Parameters> all = combinations;
+        final List<String> allLabels = labels;
+        final int runs = all.size() * repeat;
+        final int repeats = repeat;
+
+        long start = System.nanoTime();
+
+        // Runs with the same parameters differ only in their noise seed; their results are averaged
+        List<Result> results = IntStream.range(0, runs).parallel()
+                .mapToObj(i -> run(all.get(i / repeats), allLabels.get(i / repeats), settings, i % repeats))
+                .collect(Collectors.groupingBy(r -> r.label))
+                .values().stream()
+                .map(Simulation::average)
+                .sorted(Comparator.comparingDouble(r -> r.rms))
+                .collect(Collectors.toList());
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double simulated = runs * settings.duration / 1e9;
+
+        System.out.printf("%d runs, %.0f simulated s in %.1f s (%.0fx real time)%n", runs, simulated, seconds, simulated / seconds);
+        System.out.printf("%-10s %-10s %-8s %-10s %s%n", "rms (m)", "closest", "lost", "odo err", "parameters");
+
+        for (Result r : results.subList(0, Math.min(top, results.size())))
+            System.out.printf("%-10.4f %-10.3f %-8.3f %-10.5f %s%n", r.rms, r.closest, r.lost, r.odometryError, r.label.isEmpty() ? "defaults" : r.label);
+    }
+
+    private static Result average(List<Result> rs) {
+        double rms = 0, closest = Double.MAX_VALUE, lost = 0, odometry = 0;
+
+        for (Result r : rs) {
+            rms += r.rms / rs.size();
+            closest = Math.min(closest, r.closest);
+            lost += r.lost / rs.size();
+            odometry = Math.max(odometry, r.odometryError);
+        }
+
+        return new Result(rs.get(0).label, rms, closest, lost, odometry);
+    }
+
+    // One run of the task on its own virtual clock, with every component at its real period
+    private static Result run(Parameters p, String label, Settings s, int seed) {
+        VirtualScheduler virtual = new VirtualScheduler();
+
+        SimulatedKobuki robot = new SimulatedKobuki(virtual);
+        robot.setLatency(s.latency);
+        robot.setEncoders(65000, 65000); // so every run crosses the rollover
+
+        // Keeps walking to the end of the run; in Task 2 it turns left after 3 m
+        SimulatedPerson person = new SimulatedPerson(0, 2.3, 1, s.personSpeed, s.task == 2 ? 3 : 0, Math.PI / 2, s.personSpeed * 100);
+
+        SyntheticCameraSource camera = new SyntheticCameraSource(robot, person, CameraMount.FRONT, 640, 480, 30, virtual);
+        camera.setGroundTruth(!s.vision);
+        camera.setNoise(s.noise, seed);
+
+        // A second view of the same scene for scoring, so its locate() calls leave the camera's alone
+        SyntheticCameraSource truth = new SyntheticCameraSource(robot, person, CameraMount.FRONT, 640, 480, 30, virtual);
+
+        KobukiController k = new KobukiController("simulation-" + names.incrementAndGet(), robot, PreviewSink.NONE, virtual);
+        k.getMetrics().stopSummaryDump();
+        k.getParameters().set(p);
+        k.setFollowMode(s.mode);
+        k.setPredictive(s.predictive);
+        k.getCamera().setSource(camera);
+
+        double target = (p.getRange() + p.getOffset()) / 1000;
+        Score score = new Score();
+
+        virtual.scheduleAtFixedRate(() -> {
+            double d = truth.locate(virtual.nanoTime());
+            score.samples++;
+
+            if (Double.isNaN(d))
+                return;
+
+            score.squared += (d - target) * (d - target);
+            score.closest = Math.min(score.closest, d);
+            score.scored++;
+        }, SETTLED, TimeUnit.MILLISECONDS.toNanos(FRAME_PERIOD), TimeUnit.NANOSECONDS);
+
+        k.startTask(s.task);
+        virtual.runUntil(s.duration);
+
+        double odometryError = Math.abs(robot.getPose().getTravelled() - k.getPose().getTravelled());
+        double rms = score.scored > 0 ? Math.sqrt(score.squared / score.scored) : Double.MAX_VALUE;
+        double lost = score.samples > 0 ? (double) (score.samples - score.scored) / score.samples : 0;
+
+        k.shutdown();
+
+        return new Result(label, rms, score.closest, lost, odometryError);
+    }
+}
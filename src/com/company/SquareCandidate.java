@@ -0,0 +1,31 @@
+package com.company;
+
+class SquareCandidate {
+    // x0, y0, ..., x3, y3
+    final float[] corners = new float[8];
+
+    double area;
+    double fill;
+    double aspect;
+    double score;
+
+    void set(float[] points, double area, double fill, double aspect) {
+        System.arraycopy(points, 0, corners, 0, 8);
+
+        this.area = area;
+        this.fill = fill;
+        this.aspect = aspect;
+
+        // Prefer big, solid, square-looking blobs
+        score = area * fill * aspect;
+    }
+
+    void scale(float s) {
+        // Map coarse pixel centres back to full resolution
+        for (int i = 0; i < 8; i++)
+            corners[i] = (corners[i] + 0.5f) * s - 0.5f;
+
+        area *= s * s;
+        score *= s * s;
+    }
+}
@@ -0,0 +1,566 @@
+package com.company;
+
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SquareDetector {
+    // Capture resolution
+    private int width = 0;
+    private int height = 0;
+
+    // Resolution the threshold/contour search runs at
+    private int searchWidth = 0;
+    private int searchHeight = 0;
+    private int allocations = 0;
+
+    // Per-pipeline buffers; sized to the search resolution and reused every frame.
+    // Nothing here takes a submat, which hands back a new Java Mat every time.
+    private final Mat small = new Mat();
+    private final Mat hsv = new Mat();
+    private final Mat thresh = new Mat();
+    private final Mat strEl = new Mat();
+
+    // Copies of the tracking window. Its size is rounded up to WINDOW_STEP and only shrinks once it is
+    // two steps too big, so native memory only changes when the target's size does noticeably.
+    private static final int WINDOW_STEP = 32;
+    private final Mat window = new Mat();
+    private final Mat windowHsv = new Mat();
+    private final Mat windowThresh = new Mat();
+    private final Mat windowLabels = new Mat();
+    private final Rect windowRect = new Rect();
+    private final Size windowSize = new Size();
+    private final Point windowCenter = new Point();
+
+    // Blobs of the mask, with their box and pixel count; outlines are traced from the labels.
+    // Stats only change size with the number of blobs.
+    private final Mat labels = new Mat();
+    private final Mat stats = new Mat();
+    private final Mat centroids = new Mat();
+    private int[] statsBuf = new int[5 * 64];
+    private int[] rowBuf = new int[0];
+    private int[] lefts = new int[0];
+    private int[] rights = new int[0];
+    private float[] curveBuf = new float[0];
+    private int points = 0;
+
+    // Only for blobs with a gap in some row; findContours hands back new Java Mats every time
+    private final Mat blob = new Mat();
+    private final Mat hierarchy = new Mat();
+    private final List<MatOfPoint> contours = new ArrayList<>();
+    private final Scalar labelValue = new Scalar(0);
+
+    private final MatOfPoint2f curve = new MatOfPoint2f();
+    private final MatOfPoint2f approx = new MatOfPoint2f();
+    private final MatOfPoint quad = new MatOfPoint();
+    private final float[] quadBuf = new float[8];
+
+    // Ranked square candidates from the last frame, best first
+    private static final int MAX_CANDIDATES = 8;
+    private final SquareCandidate[] ranked = new SquareCandidate[MAX_CANDIDATES];
+    private SquareCandidate spare = new SquareCandidate();
+    private int count = 0;
+
+    // Cheap rejection thresholds, applied before polygon approximation
+    private static final double MIN_AREA = 100;
+    private static final double MIN_ASPECT = 0.5;
+    private static final double MIN_FILL = 0.45;
+
+    // Result corners at capture resolution
+    private final MatOfPoint2f corners = new MatOfPoint2f(new Point(), new Point(), new Point(), new Point());
+
+    private static final Point ORIGIN = new Point(0, 0);
+    private static final Scalar BLACK = new Scalar(0);
+    private final Point offset = new Point();
+    private final Size searchSize = new Size();
+
+    // Restricts the search to a window around the predicted position after a detection
+    private final SquareTracker tracker = new SquareTracker();
+    private volatile boolean tracking = true;
+
+    // Pyramid level the search runs at (0 = full resolution); the kernel shrinks with it
+    private volatile int pyramidLevel = 0;
+    private volatile int kernelSize = Parameters.DEFAULTS.getKernelSize();
+    private volatile double epsilon = Parameters.DEFAULTS.getEpsilon();
+    private int level = -1;
+    private int kernel = -1;
+
+    // Banded threshold/morphology across cores, created on first use
+    private volatile boolean parallel = false;
+    private ParallelThreshold threshold = null;
+
+    // Per-stage timings
+    private LatencyHistogram findTime;
+    private LatencyHistogram cvtColorTime;
+    private LatencyHistogram inRangeTime;
+    private LatencyHistogram morphologyTime;
+    private LatencyHistogram thresholdTime;
+    private LatencyHistogram componentsTime;
+    private LatencyHistogram candidatesTime;
+    private LatencyHistogram refineTime;
+
+    // Sub-pixel corner refinement at full resolution
+    private final Mat patchColor = new Mat();
+    private final Mat patch = new Mat();
+    private final Size patchSize = new Size();
+    private final Point patchCenter = new Point();
+    private final MatOfPoint2f refinePoint = new MatOfPoint2f(new Point());
+    private final float[] pointBuf = new float[2];
+    private final Size refineWin = new Size();
+    private static final Size NO_ZERO_ZONE = new Size(-1, -1);
+    private static final TermCriteria REFINE_CRITERIA = new TermCriteria(TermCriteria.EPS + TermCriteria.COUNT, 20, 0.01);
+
+    public SquareDetector() {
+        for (int i = 0; i < MAX_CANDIDATES; i++)
+            ranked[i] = new SquareCandidate();
+
+        setMetrics(new Metrics());
+    }
+
+    public void setMetrics(Metrics metrics) {
+        findTime = metrics.histogram("vision.find");
+        cvtColorTime = metrics.histogram("vision.cvtColor");
+        inRangeTime = metrics.histogram("vision.inRange");
+        morphologyTime = metrics.histogram("vision.morphology");
+        thresholdTime = metrics.histogram("vision.parallelThreshold");
+        componentsTime = metrics.histogram("vision.components");
+        candidatesTime = metrics.histogram("vision.candidates");
+        refineTime = metrics.histogram("vision.refine");
+    }
+
+    public void allocate(int width, int height) {
+        int level = pyramidLevel;
+        int kernel = kernelSize;
+
+        // Only touch native memory when the resolution or pyramid level actually changes
+        if (width == this.width && height == this.height && level == this.level && kernel == this.kernel)
+            return;
+
+        this.width = width;
+        this.height = height;
+        this.level = level;
+        this.kernel = kernel;
+
+        searchWidth = (width + (1 << level) - 1) >> level;
+        searchHeight = (height + (1 << level) - 1) >> level;
+        searchSize.width = searchWidth;
+        searchSize.height = searchHeight;
+
+        if (level > 0)
+            small.create(searchHeight, searchWidth, CvType.CV_8UC3);
+
+        hsv.create(searchHeight, searchWidth, CvType.CV_8UC3);
+        thresh.create(searchHeight, searchWidth, CvType.CV_8UC1);
+
+        // One label row at a time, and an outline of at most two points per row and side
+        rowBuf = new int[searchWidth];
+        lefts = new int[searchHeight];
+        rights = new int[searchHeight];
+        curveBuf = new float[8 * searchHeight];
+
+        // Scale the structuring element with the image, keeping it odd
+        int k = Math.max(3, (kernel >> level) | 1);
+        Mat el = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(k, k));
+        el.copyTo(strEl);
+        el.release();
+
+        // Search window for refinement covers the quantisation error of the coarse level
+        refineWin.width = refineWin.height = 2 << level;
+
+        tracker.reset();
+        allocations++;
+    }
+
+    // Returns the corners of the best-scoring square at capture resolution, or null.
+    // The returned Mat is owned by the detector and is only valid until the next call.
+    public MatOfPoint2f find(Mat m, Scalar minGreen, Scalar maxGreen) {
+        long start = System.nanoTime();
+
+        allocate(m.cols(), m.rows());
+
+        // Downscale first when running on a coarser pyramid level
+        Mat src = m;
+
+        if (level > 0) {
+            Imgproc.resize(m, small, searchSize, 0, 0, Imgproc.INTER_AREA);
+            src = small;
+        }
+
+        if (!tracking)
+            tracker.reset();
+
+        // Search around the predicted position first, then fall back to the full frame on a miss
+        Rect roi = tracking ? tracker.predict(searchWidth, searchHeight) : null;
+        count = 0;
+
+        if (roi != null)
+            searchWindow(src, minGreen, maxGreen, roi);
+
+        if (count == 0)
+            search(src, hsv, thresh, labels, minGreen, maxGreen, ORIGIN);
+
+        if (tracking)
+            tracker.update(count > 0 ? ranked[0].corners : null);
+
+        if (count == 0) {
+            findTime.recordSince(start);
+            return null;
+        }
+
+        if (level > 0) {
+            for (int i = 0; i < count; i++)
+                ranked[i].scale(1 << level);
+
+            // Only the winner is worth refining
+            long t = System.nanoTime();
+            refine(m, ranked[0].corners);
+            refineTime.recordSince(t);
+        }
+
+        corners.put(0, 0, ranked[0].corners);
+
+        findTime.recordSince(start);
+        return corners;
+    }
+
+    private void refine(Mat m, float[] pts) {
+        int half = (int) refineWin.width;
+
+        for (int i = 0; i < 8; i += 2) {
+            float x = pts[i];
+            float y = pts[i + 1];
+
+            // Grayscale patch around the corner, large enough for the search window
+            int x0 = Math.max(0, Math.round(x) - half - 2);
+            int y0 = Math.max(0, Math.round(y) - half - 2);
+            int x1 = Math.min(width, Math.round(x) + half + 3);
+            int y1 = Math.min(height, Math.round(y) + half + 3);
+
+            if (x1 - x0 <= 2 * half + 1 || y1 - y0 <= 2 * half + 1)
+                continue;
+
+            // Centred on the box, so the copy starts on a whole pixel and needs no interpolation
+            patchSize.width = x1 - x0;
+            patchSize.height = y1 - y0;
+            patchCenter.x = x0 + (patchSize.width - 1) / 2;
+            patchCenter.y = y0 + (patchSize.height - 1) / 2;
+
+            Imgproc.getRectSubPix(m, patchSize, patchCenter, patchColor);
+            Imgproc.cvtColor(patchColor, patch, Imgproc.COLOR_RGB2GRAY);
+
+            pointBuf[0] = x - x0;
+            pointBuf[1] = y - y0;
+            refinePoint.put(0, 0, pointBuf);
+
+            Imgproc.cornerSubPix(patch, refinePoint, refineWin, NO_ZERO_ZONE, REFINE_CRITERIA);
+
+            refinePoint.get(0, 0, pointBuf);
+            pts[i] = pointBuf[0] + x0;
+            pts[i + 1] = pointBuf[1] + y0;
+        }
+    }
+
+    private void searchWindow(Mat m, Scalar minGreen, Scalar maxGreen, Rect roi) {
+        // Grow the predicted window to whole steps, shifted back inside the frame rather than clipped
+        Rect r = windowRect;
+        r.width = Math.min(searchWidth, steps(roi.width, r.width));
+        r.height = Math.min(searchHeight, steps(roi.height, r.height));
+        r.x = Math.max(0, Math.min(searchWidth - r.width, roi.x - (r.width - roi.width) / 2));
+        r.y = Math.max(0, Math.min(searchHeight - r.height, roi.y - (r.height - roi.height) / 2));
+
+        // Copy the window out, centred so it starts on a whole pixel and is an exact copy
+        windowSize.width = r.width;
+        windowSize.height = r.height;
+        windowCenter.x = r.x + (r.width - 1) / 2.0;
+        windowCenter.y = r.y + (r.height - 1) / 2.0;
+
+        Imgproc.getRectSubPix(m, windowSize, windowCenter, window);
+
+        offset.x = r.x;
+        offset.y = r.y;
+
+        search(window, windowHsv, windowThresh, windowLabels, minGreen, maxGreen, offset);
+
+        // Paste the window's mask into a black frame so the preview doesn't show stale pixels
+        Core.copyMakeBorder(windowThresh, thresh, r.y, searchHeight - r.y - r.height,
+                r.x, searchWidth - r.x - r.width, Core.BORDER_CONSTANT, BLACK);
+    }
+
+    // Smallest whole number of steps covering size, unless the current window is no more than a step bigger
+    private static int steps(int size, int current) {
+        int s = (size + WINDOW_STEP - 1) / WINDOW_STEP * WINDOW_STEP;
+
+        return s <= current && s + WINDOW_STEP >= current ? current : s;
+    }
+
+    private void search(Mat m, Mat hsv, Mat thresh, Mat labels, Scalar minGreen, Scalar maxGreen, Point offset) {
+        if (parallel && threshold == null)
+            threshold = new ParallelThreshold();
+
+        long t = System.nanoTime();
+
+        if (parallel && threshold.worthwhile(m.rows(), strEl)) {
+            // Same mask, computed in bands across all cores
+            threshold.apply(m, thresh, minGreen, maxGreen, strEl);
+            t = lap(thresholdTime, t);
+        }
+        else {
+            // HSV
+            Imgproc.cvtColor(m, hsv, Imgproc.COLOR_RGB2HSV);
+            t = lap(cvtColorTime, t);
+
+            // Keep only greens
+            Core.inRange(hsv, minGreen, maxGreen, thresh);
+            t = lap(inRangeTime, t);
+
+            // Morphological open and close for noise removal
+            Imgproc.morphologyEx(thresh, thresh, Imgproc.MORPH_CLOSE, strEl);
+            Imgproc.morphologyEx(thresh, thresh, Imgproc.MORPH_OPEN, strEl);
+            t = lap(morphologyTime, t);
+        }
+
+        // 8-connected blobs, like findContours' external contours; label 0 is the background
+        int blobs = Imgproc.connectedComponentsWithStats(thresh, labels, stats, centroids);
+        t = lap(componentsTime, t);
+
+        if (statsBuf.length < 5 * blobs)
+            statsBuf = new int[10 * blobs];
+
+        stats.get(0, 0, statsBuf);
+
+        // Last label first, which is the order findContours returns them in
+        for (int i = blobs - 1; i > 0; i--) {
+            int x = statsBuf[5 * i + Imgproc.CC_STAT_LEFT];
+            int y = statsBuf[5 * i + Imgproc.CC_STAT_TOP];
+            int w = statsBuf[5 * i + Imgproc.CC_STAT_WIDTH];
+            int h = statsBuf[5 * i + Imgproc.CC_STAT_HEIGHT];
+            double box = (double) w * h;
+
+            // Cheap rejections first, before any polygon work. The pixel count is an upper
+            // bound on the outline's area, so nothing that could pass is dropped here.
+            int pixels = statsBuf[5 * i + Imgproc.CC_STAT_AREA];
+
+            if (pixels < MIN_AREA || pixels / box < MIN_FILL)
+                continue;
+
+            double aspect = w < h ? (double) w / h : (double) h / w;
+
+            if (aspect < MIN_ASPECT)
+                continue;
+
+            if (!outline(labels, i, x, y, w, h, offset))
+                trace(labels, i, offset);
+
+            double area = Imgproc.contourArea(curve);
+
+            if (area < MIN_AREA)
+                continue;
+
+            double fill = area / box;
+
+            if (fill < MIN_FILL)
+                continue;
+
+            Imgproc.approxPolyDP(curve, approx, Imgproc.arcLength(curve, true) * epsilon, true);
+
+            if (approx.rows() != 4)
+                continue;
+
+            approx.convertTo(quad, CvType.CV_32SC2);
+
+            if (!Imgproc.isContourConvex(quad))
+                continue;
+
+            approx.get(0, 0, quadBuf);
+            insert(area, fill, aspect);
+        }
+
+        lap(candidatesTime, t);
+    }
+
+    // Outline of blob `label` in full-frame coordinates: the same polygon findContours traces with
+    // CHAIN_APPROX_SIMPLE. Only works while every row of the blob is one run, as in a square;
+    // returns false otherwise.
+    private boolean outline(Mat labels, int label, int x, int y, int w, int h, Point offset) {
+        for (int r = 0; r < h; r++) {
+            // Reads past the end of the box into the next rows; only the first w labels matter
+            labels.get(y + r, x, rowBuf);
+
+            int left = 0;
+            int right = w - 1;
+
+            while (rowBuf[left] != label)
+                left++;
+
+            while (rowBuf[right] != label)
+                right--;
+
+            for (int j = left + 1; j < right; j++) {
+                if (rowBuf[j] != label)
+                    return false;
+            }
+
+            lefts[r] = x + left;
+            rights[r] = x + right;
+        }
+
+        // Down the left side, then back up the right. Where an edge moves more than a pixel between
+        // rows, the boundary runs along the wider row and steps diagonally onto the other one.
+        points = 0;
+
+        for (int r = 0; r < h; r++) {
+            if (r > 0 && lefts[r] < lefts[r - 1] - 1)
+                point(lefts[r - 1] - 1, y + r);
+            else if (r > 0 && lefts[r] > lefts[r - 1] + 1)
+                point(lefts[r] - 1, y + r - 1);
+
+            point(lefts[r], y + r);
+        }
+
+        for (int r = h - 1; r >= 0; r--) {
+            if (r < h - 1 && rights[r] > rights[r + 1] + 1)
+                point(rights[r + 1] + 1, y + r);
+            else if (r < h - 1 && rights[r] < rights[r + 1] - 1)
+                point(rights[r] + 1, y + r + 1);
+
+            point(rights[r], y + r);
+        }
+
+        // A one-pixel top row closes onto the starting point
+        if (points > 1 && curveBuf[2 * points - 2] == curveBuf[0] && curveBuf[2 * points - 1] == curveBuf[1])
+            points--;
+
+        for (int i = 0; i < 2 * points; i += 2) {
+            curveBuf[i] += offset.x;
+            curveBuf[i + 1] += offset.y;
+        }
+
+        // Only reallocates when the point count changes; put() stops at the end of the Mat
+        curve.create(points, 1, CvType.CV_32FC2);
+        curve.put(0, 0, curveBuf);
+
+        return true;
+    }
+
+    // Appends a boundary point, dropping the previous one when it lies inside a straight run
+    private void point(int x, int y) {
+        int n = 2 * points;
+
+        if (points > 0 && curveBuf[n - 2] == x && curveBuf[n - 1] == y)
+            return;
+
+        if (points > 1 && Math.signum(x - curveBuf[n - 2]) == Math.signum(curveBuf[n - 2] - curveBuf[n - 4])
+                && Math.signum(y - curveBuf[n - 1]) == Math.signum(curveBuf[n - 1] - curveBuf[n - 3])) {
+            points--;
+            n -= 2;
+        }
+
+        curveBuf[n] = x;
+        curveBuf[n + 1] = y;
+        points++;
+    }
+
+    // A blob with a hole, or bitten into from above or below. Rare once the mask has been closed,
+    // so it is left to findContours and the Java objects it allocates.
+    private void trace(Mat labels, int i, Point offset) {
+        labelValue.val[0] = i;
+        Core.compare(labels, labelValue, blob, Core.CMP_EQ);
+
+        Imgproc.findContours(blob, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE, offset);
+        contours.get(0).convertTo(curve, CvType.CV_32FC2);
+
+        for (MatOfPoint contour: contours)
+            contour.release();
+
+        contours.clear();
+    }
+
+    private static long lap(LatencyHistogram h, long start) {
+        long now = System.nanoTime();
+        h.record(now - start);
+
+        return now;
+    }
+
+    private void insert(double area, double fill, double aspect) {
+        SquareCandidate c = spare;
+        c.set(quadBuf, area, fill, aspect);
+
+        // Full and worse than everything kept
+        if (count == ranked.length && c.score <= ranked[count - 1].score)
+            return;
+
+        // Keep the list sorted by score, best first
+        int i = count < ranked.length ? count++ : count - 1;
+
+        spare = ranked[i];
+
+        while (i > 0 && ranked[i - 1].score < c.score) {
+            ranked[i] = ranked[i - 1];
+            i--;
+        }
+
+        ranked[i] = c;
+    }
+
+    public void setTracking(boolean tracking) {
+        this.tracking = tracking;
+    }
+
+    public void setPyramidLevel(int level) {
+        pyramidLevel = level;
+    }
+
+    // approxPolyDP tolerance as a fraction of the contour's perimeter
+    public void setEpsilon(double epsilon) {
+        this.epsilon = epsilon;
+    }
+
+    // Kernel size at full resolution; it is halved for each pyramid level
+    public void setKernelSize(int size) {
+        kernelSize = size;
+    }
+
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public SquareTracker getTracker() {
+        return tracker;
+    }
+
+    public Mat getMask() {
+        return thresh;
+    }
+
+    public int getAllocations() {
+        return allocations;
+    }
+
+    public void release() {
+        hsv.release();
+        thresh.release();
+        window.release();
+        windowHsv.release();
+        windowThresh.release();
+        windowLabels.release();
+        labels.release();
+        blob.release();
+        hierarchy.release();
+        stats.release();
+        centroids.release();
+        curve.release();
+        approx.release();
+        quad.release();
+        small.release();
+        corners.release();
+        patchColor.release();
+        patch.release();
+
+        width = 0;
+        height = 0;
+        level = -1;
+    }
+}
@@ -0,0 +1,101 @@
+package com.company;
+
+import org.opencv.core.Rect;
+
+public class SquareTracker {
+    // Number of past detections used to estimate motion
+    private static final int HISTORY = 3;
+
+    // Ring of recent bounding boxes (centre and size)
+    private final double[] cx = new double[HISTORY];
+    private final double[] cy = new double[HISTORY];
+    private final double[] w = new double[HISTORY];
+    private final double[] h = new double[HISTORY];
+    private int head = 0;
+    private int count = 0;
+
+    // Search the whole frame every so often, in case a better candidate has appeared elsewhere
+    private static final int FULL_SEARCH_INTERVAL = 15;
+    private int framesSinceFull = 0;
+
+    // Extra margin around the predicted box, as a fraction of its size on each side
+    private static final double PADDING = 0.75;
+
+    private final Rect roi = new Rect();
+
+    // Returns the window to search this frame, or null for a full-frame search.
+    // The returned Rect is reused between calls.
+    public Rect predict(int width, int height) {
+        if (count == 0 || framesSinceFull >= FULL_SEARCH_INTERVAL) {
+            framesSinceFull = 0;
+            return null;
+        }
+
+        framesSinceFull++;
+
+        int last = (head + HISTORY - 1) % HISTORY;
+        int first = (head + HISTORY - count) % HISTORY;
+
+        // Average per-frame motion over the history
+        double vx = 0, vy = 0;
+
+        if (count > 1) {
+            vx = (cx[last] - cx[first]) / (count - 1);
+            vy = (cy[last] - cy[first]) / (count - 1);
+        }
+
+        double halfW = w[last] * (0.5 + PADDING) + Math.abs(vx);
+        double halfH = h[last] * (0.5 + PADDING) + Math.abs(vy);
+
+        int x0 = (int) Math.max(0, Math.floor(cx[last] + vx - halfW));
+        int y0 = (int) Math.max(0, Math.floor(cy[last] + vy - halfH));
+        int x1 = (int) Math.min(width, Math.ceil(cx[last] + vx + halfW));
+        int y1 = (int) Math.min(height, Math.ceil(cy[last] + vy + halfH));
+
+        // Predicted off-screen or too small to hold anything; search everything
+        if (x1 - x0 < 2 || y1 - y0 < 2)
+            return null;
+
+        roi.x = x0;
+        roi.y = y0;
+        roi.width = x1 - x0;
+        roi.height = y1 - y0;
+
+        return roi;
+    }
+
+    // Takes the four corners (x0, y0, ..., x3, y3) of the detection, or null on a miss
+    public void update(float[] corners) {
+        // A miss throws away the motion history; the next frame searches everything
+        if (corners == null) {
+            reset();
+            return;
+        }
+
+        float x0 = corners[0], x1 = corners[0];
+        float y0 = corners[1], y1 = corners[1];
+
+        for (int i = 2; i < 8; i += 2) {
+            x0 = Math.min(x0, corners[i]);
+            x1 = Math.max(x1, corners[i]);
+            y0 = Math.min(y0, corners[i + 1]);
+            y1 = Math.max(y1, corners[i + 1]);
+        }
+
+        cx[head] = (x0 + x1) / 2.0;
+        cy[head] = (y0 + y1) / 2.0;
+        w[head] = x1 - x0 + 1;
+        h[head] = y1 - y0 + 1;
+
+        head = (head + 1) % HISTORY;
+
+        if (count < HISTORY)
+            count++;
+    }
+
+    public void reset() {
+        count = 0;
+        head = 0;
+        framesSinceFull = 0;
+    }
+}
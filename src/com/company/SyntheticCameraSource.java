@@ -0,0 +1,204 @@
+package com.company;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Camera for the simulated robot: renders the person's square on a plain background, sized for the
+// distance through the inverse of the area-distance fit and placed for the bearing through the
+// camera's mount. Each read renders the moment the clock shows and returns at once; frames are due
+// at the frame rate, so the camera pipeline reads it on a schedule, in real or virtual time.
+// In ground-truth mode nothing is rendered: each read hands over the square's corners instead, so
+// a simulation runs the controller on exact sightings without paying for rendering or detection.
+public class SyntheticCameraSource implements FrameSource {
+    private final SimulatedKobuki robot;
+    private final SimulatedPerson person;
+    private final CameraMount mount;
+    private final int width;
+    private final int height;
+    private final long period;
+    private final Clock clock;
+
+    private final Scalar background = new Scalar(100, 100, 100);
+    private final Scalar green = new Scalar(0, 0, 0);
+    private final Point topLeft = new Point();
+    private final Point bottomRight = new Point();
+
+    private double column;
+    private long next;
+    private boolean open = false;
+
+    private volatile boolean groundTruth = false;
+    private final float[] corners = new float[8];
+
+    // Relative distance error added to ground-truth sightings, standing in for the detector's
+    private double noise = 0;
+    private Random random = new Random(0);
+
+    SyntheticCameraSource(SimulatedKobuki robot, SimulatedPerson person, CameraMount mount,
+                          int width, int height, double fps, Clock clock) {
+        this.robot = robot;
+        this.person = person;
+        this.mount = mount;
+        this.width = width;
+        this.height = height;
+        this.period = (long) (TimeUnit.SECONDS.toNanos(1) / fps);
+        this.clock = clock;
+    }
+
+    public boolean open() {
+        // The middle of the default thresholds, in the channel order the detector converts from
+        Scalar min = new Scalar(0, 0, 0);
+        Scalar max = new Scalar(0, 0, 0);
+        Parameters.DEFAULTS.getMinHsv(min);
+        Parameters.DEFAULTS.getMaxHsv(max);
+
+        Mat hsv = new Mat(1, 1, CvType.CV_8UC3, new Scalar(
+                (min.val[0] + max.val[0]) / 2, (min.val[1] + max.val[1]) / 2, (min.val[2] + max.val[2]) / 2));
+        Mat rgb = new Mat();
+        Imgproc.cvtColor(hsv, rgb, Imgproc.COLOR_HSV2RGB);
+        System.arraycopy(rgb.get(0, 0), 0, green.val, 0, 3);
+
+        hsv.release();
+        rgb.release();
+
+        next = clock.nanoTime();
+        open = true;
+
+        return true;
+    }
+
+    public boolean read(Mat frame) {
+        if (!open)
+            return false;
+
+        long now = clock.nanoTime();
+
+        // Whole frame periods from the first, skipping any the reader was too late for
+        next = Math.max(next + period, now + period - (now - next) % period);
+
+        if (groundTruth)
+            corners(frame, now);
+        else
+            render(frame, now);
+
+        return true;
+    }
+
+    // Corners of the square as a 4x1 CV_32FC2 Mat, clockwise from the top left; empty when out of view
+    private void corners(Mat frame, long time) {
+        double distance = locate(time);
+
+        if (Double.isNaN(distance)) {
+            frame.release();
+            return;
+        }
+
+        if (noise > 0)
+            distance *= 1 + noise * random.nextGaussian();
+
+        float half = (float) half(distance);
+        float x0 = (float) column - half, x1 = (float) column + half;
+        float y0 = height / 2f - half, y1 = height / 2f + half;
+
+        corners[0] = x0;
+        corners[1] = y0;
+        corners[2] = x1;
+        corners[3] = y0;
+        corners[4] = x1;
+        corners[5] = y1;
+        corners[6] = x0;
+        corners[7] = y1;
+
+        frame.create(4, 1, CvType.CV_32FC2);
+        frame.put(0, 0, corners);
+    }
+
+    public long getNextFrameTime() {
+        return next;
+    }
+
+    private void render(Mat frame, long time) {
+        frame.create(height, width, CvType.CV_8UC3);
+
+        // Filled as a rectangle: Mat.setTo() returns a new Java Mat on every call
+        topLeft.x = 0;
+        topLeft.y = 0;
+        bottomRight.x = width;
+        bottomRight.y = height;
+        Imgproc.rectangle(frame, topLeft, bottomRight, background, -1);
+
+        double distance = locate(time);
+
+        if (Double.isNaN(distance))
+            return;
+
+        double half = half(distance);
+
+        topLeft.x = column - half;
+        topLeft.y = height / 2.0 - half;
+        bottomRight.x = column + half;
+        bottomRight.y = height / 2.0 + half;
+
+        Imgproc.rectangle(frame, topLeft, bottomRight, green, -1);
+    }
+
+    // Half the side of the square at this distance, in px
+    private static double half(double distance) {
+        return Math.sqrt(Parameters.DEFAULTS.distanceToArea(distance)) / 2;
+    }
+
+    // True distance from the lens to the person, or NaN when they are out of view; also sets the
+    // column the square is centred on. Lets simulations skip rendering and detection.
+    double locate(long time) {
+        Pose p = robot.getPose();
+        double c = Math.cos(p.getHeading()), s = Math.sin(p.getHeading());
+
+        // Camera position in the world, then the person relative to it
+        double cx = p.getX() + c * mount.getX() - s * mount.getY();
+        double cy = p.getY() + s * mount.getX() + c * mount.getY();
+        double dx = person.getX(time) - cx;
+        double dy = person.getY(time) - cy;
+
+        double distance = Math.hypot(dx, dy);
+        column = mount.column(Math.atan2(dy, dx) - p.getHeading(), width);
+
+        return Double.isNaN(column) || distance < 0.3 ? Double.NaN : distance;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean isLive() {
+        return true;
+    }
+
+    // Takes effect on the next read
+    public void setGroundTruth(boolean groundTruth) {
+        this.groundTruth = groundTruth;
+    }
+
+    public boolean isGroundTruth() {
+        return groundTruth;
+    }
+
+    // Set before the camera starts; the seed makes the noise the same on every run
+    public void setNoise(double relative, long seed) {
+        noise = relative;
+        random = new Random(seed);
+    }
+
+    public void release() {
+        open = false;
+    }
+}
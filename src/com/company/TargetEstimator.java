@@ -0,0 +1,172 @@
+package com.company;
+
+// Alpha-beta filter over the target's position along the robot's track.
+// Detections are relative to the robot, so each one is turned into an absolute position using
+// the wheel odometry at the frame's capture time; predictions subtract the odometry at the time
+// asked for. That separates the person's motion from the robot's and cancels pipeline latency.
+// All times are nanoTime() values from the scheduler's Clock; nothing allocates after construction.
+public class TargetEstimator {
+    // Odometry samples kept for looking up the robot's position at a frame's capture time
+    private static final int HISTORY = 16;
+
+    private final long[] times = new long[HISTORY];
+    private final double[] positions = new double[HISTORY];
+    private int samples = 0;
+    private int head = 0;
+
+    private double alpha;
+    private double beta;
+
+    // Residuals larger than this are treated as misdetections, until too many in a row
+    private double gate = 1.0; // m
+    private int maxRejects = 3;
+    private double maxSpeed = 3.0; // m/s
+
+    private boolean valid = false;
+    private double position; // m, along the track from where odometry started
+    private double speed; // m/s, the target's own speed
+    private long time;
+    private int rejects = 0;
+    private long rejected = 0;
+
+    TargetEstimator() {
+        this(0.4, 0.05);
+    }
+
+    TargetEstimator(double alpha, double beta) {
+        this.alpha = alpha;
+        this.beta = beta;
+    }
+
+    // Distance the robot has driven (m), sampled at the given time
+    public void odometry(long time, double travelled) {
+        // Out-of-order samples would break the interpolation
+        if (samples > 0 && time <= times[(head + HISTORY - 1) % HISTORY])
+            return;
+
+        times[head] = time;
+        positions[head] = travelled;
+        head = (head + 1) % HISTORY;
+
+        if (samples < HISTORY)
+            samples++;
+    }
+
+    // Robot position at the given time, interpolated between samples and held at either end
+    public double robotPosition(long t) {
+        if (samples == 0)
+            return 0;
+
+        int newest = (head + HISTORY - 1) % HISTORY;
+
+        if (t >= times[newest])
+            return positions[newest];
+
+        for (int n = 1; n < samples; n++) {
+            int older = (newest + HISTORY - 1) % HISTORY;
+
+            if (t >= times[older]) {
+                double f = (double) (t - times[older]) / (times[newest] - times[older]);
+                return positions[older] + f * (positions[newest] - positions[older]);
+            }
+
+            newest = older;
+        }
+
+        return positions[newest];
+    }
+
+    // Robot speed (m/s) over the last two odometry samples
+    public double getRobotSpeed() {
+        if (samples < 2)
+            return 0;
+
+        int newest = (head + HISTORY - 1) % HISTORY;
+        int older = (head + HISTORY - 2) % HISTORY;
+
+        return (positions[newest] - positions[older]) * 1e9 / (times[newest] - times[older]);
+    }
+
+    // A detection of the target at the given distance (m), in a frame captured at captureTime
+    public void measure(long captureTime, double distance) {
+        double observed = robotPosition(captureTime) + distance;
+
+        if (!valid) {
+            position = observed;
+            speed = 0;
+            time = captureTime;
+            valid = true;
+            return;
+        }
+
+        double dt = (captureTime - time) / 1e9;
+
+        // Older than the current estimate; nothing to learn from it
+        if (dt <= 0)
+            return;
+
+        double predicted = position + speed * dt;
+        double residual = observed - predicted;
+
+        if (Math.abs(residual) > gate && ++rejects <= maxRejects) {
+            rejected++;
+            return;
+        }
+
+        // Either a plausible detection, or the target really moved: track it again
+        if (rejects > maxRejects) {
+            position = observed;
+            speed = 0;
+            time = captureTime;
+            rejects = 0;
+            return;
+        }
+
+        rejects = 0;
+
+        position = predicted + alpha * residual;
+        speed += beta / dt * residual;
+        speed = Math.max(-maxSpeed, Math.min(maxSpeed, speed));
+        time = captureTime;
+    }
+
+    // Predicted distance (m) from the robot to the target at the given time
+    public double predict(long t) {
+        return position + speed * (t - time) / 1e9 - robotPosition(t);
+    }
+
+    // Rate of change of the distance (m/s); negative while closing in
+    public double getDistanceRate() {
+        return speed - getRobotSpeed();
+    }
+
+    // The target's own speed along the track (m/s)
+    public double getTargetSpeed() {
+        return speed;
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public void reset() {
+        valid = false;
+        samples = 0;
+        head = 0;
+        rejects = 0;
+    }
+
+    public void setGains(double alpha, double beta) {
+        this.alpha = alpha;
+        this.beta = beta;
+    }
+
+    public void setGate(double gate, int maxRejects) {
+        this.gate = gate;
+        this.maxRejects = maxRejects;
+    }
+}
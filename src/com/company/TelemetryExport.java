@@ -0,0 +1,73 @@
+package com.company;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Decodes a TelemetryLog file into CSV for plotting: control ticks by default, or the calibration
+// frames. Records come out oldest first, with time in seconds from when the log was opened.
+// Usage: TelemetryExport <file.ktel> [out.csv] [--calibration]
+public class TelemetryExport {
+    public static void main(String[] args) throws IOException {
+        String in = null, out = null;
+        boolean calibration = false;
+
+        for (String a : args) {
+            if (a.equals("--calibration"))
+                calibration = true;
+            else if (in == null)
+                in = a;
+            else
+                out = a;
+        }
+
+        if (in == null) {
+            System.out.println("Usage: TelemetryExport <file.ktel> [out.csv] [--calibration]");
+            return;
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(in, "r");
+             PrintStream csv = out == null ? System.out : new PrintStream(out)) {
+            FileChannel channel = file.getChannel();
+            MappedByteBuffer m = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (channel.size() < TelemetryLog.HEADER || m.getInt(0) != TelemetryLog.MAGIC)
+                throw new IOException("Not a telemetry log: " + in);
+
+            if (m.getInt(4) != TelemetryLog.VERSION || m.getInt(8) != TelemetryLog.RECORD)
+                throw new IOException("Unsupported telemetry version: " + in);
+
+            int capacity = m.getInt(12);
+            long written = m.getLong(TelemetryLog.WRITTEN);
+
+            if (calibration)
+                csv.println("time,h,s,v");
+            else
+                csv.println("time,state,visible,error,distance,speed,radius,left,right");
+
+            long rows = 0;
+
+            // Only the newest capacity records are still in the ring
+            for (long n = Math.max(0, written - capacity); n < written; n++) {
+                int p = TelemetryLog.HEADER + (int) (n % capacity) * TelemetryLog.RECORD;
+                byte kind = m.get(p + 8);
+                double time = m.getLong(p) / 1e9;
+
+                if (calibration && kind == TelemetryLog.CALIBRATION) {
+                    csv.printf("%.6f,%.3f,%.3f,%.3f%n", time, m.getFloat(p + 24), m.getFloat(p + 28), m.getFloat(p + 32));
+                    rows++;
+                } else if (!calibration && kind == TelemetryLog.TICK) {
+                    csv.printf("%.6f,%d,%d,%.1f,%.1f,%d,%d,%d,%d%n", time, m.get(p + 10), m.get(p + 9),
+                            m.getFloat(p + 24), m.getFloat(p + 28), m.getShort(p + 12), m.getShort(p + 14),
+                            m.getInt(p + 16), m.getInt(p + 20));
+                    rows++;
+                }
+            }
+
+            if (out != null)
+                System.out.println(rows + " of " + written + " records written to " + out);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.company;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Per-tick trace of the control loop in fixed-size binary records. Logging a record only copies a
+// few primitives into a preallocated ring in memory; a flusher task copies them into a ring in a
+// memory-mapped file every FLUSH_PERIOD, so control and camera threads never format text or touch
+// the console. When the file ring is full the oldest records are overwritten; when the in-memory
+// ring is full because the flusher fell behind, new records are dropped and counted.
+// TelemetryExport turns the file into CSV.
+public class TelemetryLog {
+    // File layout: header of [magic][version][record size][capacity][records written], then a
+    // ring of capacity records; record n is at slot n % capacity
+    static final int MAGIC = 0x4B54454C; // "KTEL"
+    static final int VERSION = 1;
+    static final int HEADER = 24;
+    static final int WRITTEN = 16; // offset of the record count
+
+    // Record: [time:long][kind:byte][visible:byte][state:byte][unused:byte][speed:short][radius:short]
+    // [left:int][right:int][a:float][b:float][c:float]
+    static final int RECORD = 36;
+
+    static final byte TICK = 1;        // a = error (mm), b = distance (mm)
+    static final byte CALIBRATION = 2; // a, b, c = mean H, S, V
+
+    private static final int RING = 4096; // records buffered between flushes
+    private static final long FLUSH_PERIOD = 100; // ms
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer mapped;
+    private final int capacity;
+    private final long start;
+
+    // In-memory ring; a record is visible to the flusher once its sequence is published
+    private final ByteBuffer ring = ByteBuffer.allocate(RING * RECORD);
+    private final ByteBuffer source = ring.duplicate();
+    private final AtomicLongArray published = new AtomicLongArray(RING);
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long flushed = 0;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Scheduler scheduler;
+    private final Scheduler.Task flushTask;
+    private boolean closed = false;
+
+    // Records time on the scheduler's clock; capacity is the number of records the file keeps
+    TelemetryLog(String path, int capacity, Scheduler scheduler) throws IOException {
+        this.capacity = capacity;
+        this.scheduler = scheduler;
+        this.start = scheduler.nanoTime();
+
+        file = new RandomAccessFile(path, "rw");
+        file.setLength(0);
+        mapped = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) capacity * RECORD);
+
+        mapped.putInt(0, MAGIC);
+        mapped.putInt(4, VERSION);
+        mapped.putInt(8, RECORD);
+        mapped.putInt(12, capacity);
+        mapped.putLong(WRITTEN, 0);
+
+        for (int i = 0; i < RING; i++)
+            published.set(i, -1);
+
+        flushTask = scheduler.scheduleAtFixedRate(this::flush, FLUSH_PERIOD, FLUSH_PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    // About an hour of control ticks
+    TelemetryLog(String path, Scheduler scheduler) throws IOException {
+        this(path, 1 << 17, scheduler);
+    }
+
+    // One control step: the distance error and measured distance in mm, and the command sent
+    public void tick(int state, double error, double distance, short speed, short radius, boolean visible, int left, int right) {
+        append(TICK, state, visible, speed, radius, left, right, (float) error, (float) distance, 0);
+    }
+
+    // One calibration frame's mean colour
+    public void calibration(double h, double s, double v) {
+        append(CALIBRATION, 0, false, (short) 0, (short) 0, 0, 0, (float) h, (float) s, (float) v);
+    }
+
+    private void append(byte kind, int state, boolean visible, short speed, short radius, int left, int right, float a, float b, float c) {
+        long time = scheduler.nanoTime() - start;
+        long n;
+
+        // Claim the next slot, unless the flusher hasn't emptied it yet
+        do {
+            n = claimed.get();
+
+            if (n - flushed >= RING) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!claimed.compareAndSet(n, n + 1));
+
+        int slot = (int) (n % RING);
+        int p = slot * RECORD;
+
+        ring.putLong(p, time);
+        ring.put(p + 8, kind);
+        ring.put(p + 9, (byte) (visible ? 1 : 0));
+        ring.put(p + 10, (byte) state);
+        ring.put(p + 11, (byte) 0);
+        ring.putShort(p + 12, speed);
+        ring.putShort(p + 14, radius);
+        ring.putInt(p + 16, left);
+        ring.putInt(p + 20, right);
+        ring.putFloat(p + 24, a);
+        ring.putFloat(p + 28, b);
+        ring.putFloat(p + 32, c);
+
+        published.set(slot, n);
+    }
+
+    // Copies every published record, in order, into the file ring; from the flusher task and close()
+    private synchronized void flush() {
+        if (closed)
+            return;
+
+        long n = flushed;
+
+        while (published.get((int) (n % RING)) == n) {
+            int p = (int) (n % RING) * RECORD;
+
+            source.limit(p + RECORD).position(p);
+            mapped.position(HEADER + (int) (n % capacity) * RECORD);
+            mapped.put(source);
+
+            n++;
+        }
+
+        if (n != flushed) {
+            mapped.putLong(WRITTEN, n);
+            flushed = n;
+        }
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    // Flushes what is left and writes the file out
+    public void close() {
+        // A flush under way holds the lock, so this one waits for it and copies the rest
+        flushTask.cancel();
+        flush();
+
+        synchronized (this) {
+            if (closed)
+                return;
+
+            closed = true;
+            mapped.force();
+
+            try {
+                file.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
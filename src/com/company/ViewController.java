@@ -4,6 +4,7 @@ import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
@@ -29,6 +30,7 @@ public class ViewController {
 
     private ImageView faceView;
     private ImageView cameraView;
+    private PreviewRenderer preview;
 
     public TextField min;
     public TextField max;
@@ -49,11 +51,33 @@ public class ViewController {
         root.getChildren().addAll(leftBox, rightBox);
 
         // Setup robot controller
-        k = new KobukiController("COM3", faceView, cameraView);
+        preview = new PreviewRenderer(cameraView, faceView);
+        k = new KobukiController("COM3", preview);
 
         cam = k.getCamera();
-        cam.min = min;
-        cam.max = max;
+
+        // Thresholds start from the registry (which may have loaded kobuki.properties) and are
+        // published to it as they are edited; text that does not parse yet is left out
+        ParameterRegistry parameters = k.getParameters();
+
+        min.setText(parameters.getParameters().get("vision.minHsv"));
+        max.setText(parameters.getParameters().get("vision.maxHsv"));
+
+        min.textProperty().addListener((observable, was, now) -> setParameter(parameters, "vision.minHsv", now));
+        max.textProperty().addListener((observable, was, now) -> setParameter(parameters, "vision.maxHsv", now));
+    }
+
+    // Stops the robot and closes any recording or telemetry file
+    public void shutdown() {
+        k.shutdown();
+    }
+
+    private static void setParameter(ParameterRegistry parameters, String key, String value) {
+        try {
+            parameters.set(key, value);
+        } catch (IllegalArgumentException e) {
+            // Still being typed
+        }
     }
 
     private void setupLayout() {
@@ -169,7 +193,21 @@ public class ViewController {
         startCamera.setOnMouseClicked(event -> cam.viewCamera());
         stopCamera.setOnMouseClicked(event -> cam.stop());
 
-        cameraBox.getChildren().addAll(startCamera, stopCamera);
+        // Recording of frames, encoders and commands for offline replay
+        Button record = new Button("Record");
+        Button stopRecord = new Button("Stop Recording");
+
+        record.setOnMouseClicked(event -> k.startRecording("recording-" + System.currentTimeMillis() + ".krec"));
+        stopRecord.setOnMouseClicked(event -> k.stopRecording());
+
+        // Binary trace of control ticks and calibration frames; TelemetryExport turns it into CSV
+        Button telemetry = new Button("Telemetry");
+        Button stopTelemetry = new Button("Stop Telemetry");
+
+        telemetry.setOnMouseClicked(event -> k.startTelemetry("telemetry-" + System.currentTimeMillis() + ".ktel"));
+        stopTelemetry.setOnMouseClicked(event -> k.stopTelemetry());
+
+        cameraBox.getChildren().addAll(startCamera, stopCamera, record, stopRecord, telemetry, stopTelemetry);
 
         // Task buttons
         HBox taskBox = new HBox();
@@ -185,9 +223,38 @@ public class ViewController {
         taskTwo = new Button("Task 2");
         taskTwo.setOnMouseClicked(event -> k.startTask(2));
 
-        taskBox.getChildren().addAll(calibrate, taskOne, taskTwo);
+        // Run the controller on each new detection instead of polling
+        CheckBox eventDriven = new CheckBox("Event-driven");
+        eventDriven.selectedProperty().addListener((observable, was, now) -> k.setEventDriven(now));
+
+        // Follow on the latency-compensated estimate, with a choice of control law
+        CheckBox predictive = new CheckBox("Predictive");
+        predictive.selectedProperty().addListener((observable, was, now) -> k.setPredictive(now));
+
+        ComboBox<FollowController.Mode> followMode = new ComboBox<>(FXCollections.observableArrayList(FollowController.Mode.values()));
+        followMode.setValue(FollowController.Mode.P);
+        followMode.setOnAction(event -> k.setFollowMode(followMode.getValue()));
+
+        // Back off the camera while the target holds still
+        CheckBox dutyCycle = new CheckBox("Duty cycle");
+        dutyCycle.selectedProperty().addListener((observable, was, now) -> cam.setDutyCycling(now));
+
+        taskBox.getChildren().addAll(calibrate, taskOne, taskTwo, eventDriven, predictive, followMode, dutyCycle);
+
+        // Drawing the preview costs the camera thread a conversion per frame drawn
+        HBox previewBox = new HBox();
+
+        CheckBox showPreview = new CheckBox("Preview");
+        showPreview.setSelected(true);
+        showPreview.selectedProperty().addListener((observable, was, now) -> preview.setEnabled(now));
+
+        ComboBox<Integer> previewFps = new ComboBox<>(FXCollections.observableArrayList(5, 10, 15, 30));
+        previewFps.setValue(15);
+        previewFps.setOnAction(event -> preview.setPreviewFps(previewFps.getValue()));
+
+        previewBox.getChildren().addAll(showPreview, new Label("Preview fps"), previewFps);
 
-        leftBox.getChildren().addAll(menu, speedBox, radiusBox, distBox, buttonBox, minBox, maxBox, cameraBox, taskBox, cameraView);
+        leftBox.getChildren().addAll(menu, speedBox, radiusBox, distBox, buttonBox, minBox, maxBox, cameraBox, taskBox, previewBox, cameraView);
         rightBox.getChildren().add(faceView);
     }
 }
@@ -0,0 +1,132 @@
+package com.company;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+// Discrete-event scheduler on simulated time. Nothing runs until run() is called; it then takes
+// events in time order, sets the clock to each one's time and runs it on the calling thread, so
+// time between events passes instantly. Events due at the same time run in the order they were
+// scheduled, which makes every run with the same inputs identical.
+public class VirtualScheduler implements Scheduler {
+    private final class Event implements Task, Comparable<Event> {
+        final Runnable task;
+        final long period; // ns; 0 for one-shot
+        final long sequence;
+        long time;
+        volatile boolean cancelled = false;
+
+        Event(Runnable task, long time, long period) {
+            this.task = task;
+            this.time = time;
+            this.period = period;
+            this.sequence = nextSequence++;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public int compareTo(Event o) {
+            return time != o.time ? Long.compare(time, o.time) : Long.compare(sequence, o.sequence);
+        }
+    }
+
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private long nextSequence = 0;
+    private volatile long now;
+    private long executed = 0;
+
+    VirtualScheduler() {
+        this(0);
+    }
+
+    VirtualScheduler(long start) {
+        now = start;
+    }
+
+    public long nanoTime() {
+        return now;
+    }
+
+    public synchronized Task schedule(Runnable task, long delay, TimeUnit unit) {
+        return add(new Event(task, now + Math.max(0, unit.toNanos(delay)), 0));
+    }
+
+    public synchronized Task scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0)
+            throw new IllegalArgumentException("period must be positive");
+
+        return add(new Event(task, now + Math.max(0, unit.toNanos(initialDelay)), unit.toNanos(period)));
+    }
+
+    public void execute(Runnable task) {
+        schedule(task, 0, TimeUnit.NANOSECONDS);
+    }
+
+    public Scheduler dedicated(String name) {
+        return this;
+    }
+
+    // Nothing runs unless run() is called; components cancel their own tasks when they stop
+    public void shutdown() {
+    }
+
+    private Event add(Event e) {
+        events.add(e);
+        return e;
+    }
+
+    // Runs every event due up to and including time, then leaves the clock there
+    public void runUntil(long time) {
+        while (true) {
+            Event e;
+
+            synchronized (this) {
+                e = events.peek();
+
+                if (e == null || e.time > time)
+                    break;
+
+                events.poll();
+
+                if (e.cancelled)
+                    continue;
+
+                now = e.time;
+
+                // Fixed rate: the next run is due a period after this one was, however long it took
+                if (e.period > 0) {
+                    e.time += e.period;
+                    events.add(e);
+                }
+            }
+
+            executed++;
+
+            // Like a ScheduledExecutorService, a task that throws is not run again
+            try {
+                e.task.run();
+            } catch (RuntimeException x) {
+                e.cancel();
+                x.printStackTrace();
+            }
+        }
+
+        synchronized (this) {
+            now = Math.max(now, time);
+        }
+    }
+
+    public void runFor(long duration, TimeUnit unit) {
+        runUntil(now + unit.toNanos(duration));
+    }
+
+    // Events run so far
+    public long getExecuted() {
+        return executed;
+    }
+
+    public synchronized int getPending() {
+        return events.size();
+    }
+}
@@ -0,0 +1,113 @@
+package com.company;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandWriterTest {
+    private static final long PERIOD = 20; // ms
+
+    private final VirtualScheduler clock = new VirtualScheduler();
+    private final List<String> sent = new ArrayList<>();
+    private final List<Long> times = new ArrayList<>();
+
+    // Logs what reaches the robot and when
+    private final Robot robot = new Robot() {
+        public void baseControl(short speed, short radius) {
+            sent.add(speed + "," + radius);
+            times.add(clock.nanoTime());
+        }
+
+        public int getLeftEncoder() {
+            return 0;
+        }
+
+        public int getRightEncoder() {
+            return 0;
+        }
+    };
+
+    private CommandWriter start() {
+        CommandWriter w = new CommandWriter(robot, PERIOD, new Metrics(), clock);
+        w.start();
+        return w;
+    }
+
+    // A few write periods, well inside the 200 ms keep-alive
+    private void run() {
+        clock.runFor(5 * PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void latestCommandWins() {
+        CommandWriter w = start();
+
+        w.baseControl((short) 100, (short) 0);
+        w.baseControl((short) 150, (short) 0);
+        w.baseControl((short) 200, (short) 0);
+        run();
+
+        assertEquals(List.of("200,0"), sent);
+    }
+
+    @Test
+    void commandAfterStopFollowsIt() {
+        CommandWriter w = start();
+
+        w.baseControl((short) 0, (short) 0);
+        w.baseControl((short) 200, (short) 0);
+        run();
+
+        assertEquals(List.of("0,0", "200,0"), sent);
+        assertTrue(times.get(1) - times.get(0) >= TimeUnit.MILLISECONDS.toNanos(PERIOD));
+    }
+
+    @Test
+    void onlyLatestCommandWaitsBehindStop() {
+        CommandWriter w = start();
+
+        w.baseControl((short) 0, (short) 0);
+        w.baseControl((short) 100, (short) 0);
+        w.baseControl((short) 200, (short) 1);
+        run();
+
+        assertEquals(List.of("0,0", "200,1"), sent);
+    }
+
+    @Test
+    void stopDropsEverythingBeforeIt() {
+        CommandWriter w = start();
+
+        w.baseControl((short) 100, (short) 0);
+        w.baseControl((short) 0, (short) 0);
+        run();
+
+        w.baseControl((short) 0, (short) 0);
+        w.baseControl((short) 100, (short) 0);
+        w.baseControl((short) 0, (short) 0);
+        run();
+
+        // The second stop repeats the first within the keep-alive, so only one goes out
+        assertEquals(List.of("0,0"), sent);
+    }
+
+    @Test
+    void commandBehindRepeatedStopStillSent() {
+        CommandWriter w = start();
+
+        w.baseControl((short) 0, (short) 0);
+        run();
+
+        // Already stopped: this stop is skipped, but what follows it is not
+        w.baseControl((short) 0, (short) 0);
+        w.baseControl((short) 200, (short) 0);
+        run();
+
+        assertEquals(List.of("0,0", "200,0"), sent);
+    }
+}
@@ -0,0 +1,72 @@
+package com.company;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Core;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class KobukiCameraTest {
+    private static final int WARMUP = 2000;
+    private static final int FRAMES = 10000;
+    private static final double FPS = 30;
+
+    // Per frame the scheduler allocates an event for the capture and one for the processing step
+    // (48 bytes each), and publish() a new Observation (64) with its corners (48), with compressed
+    // oops. Nothing else may allocate: a single extra Mat (24) per frame would push past the slack.
+    private static final int BYTES_PER_FRAME = 2 * 48 + 64 + 48;
+    private static final int SLACK = 16;
+
+    private static com.sun.management.ThreadMXBean threads;
+
+    @BeforeAll
+    static void load() {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    }
+
+    // Capture, processing and publish on virtual time, all on this thread
+    @Test
+    void pipelineDoesNotReallocate() {
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        VirtualScheduler clock = new VirtualScheduler();
+        KobukiCamera camera = new KobukiCamera(PreviewSink.NONE, clock);
+        camera.setSource(new SlidingSquareSource(160, 120, 24, FPS, clock));
+        camera.start(1);
+
+        long period = (long) (TimeUnit.SECONDS.toNanos(1) / FPS);
+        clock.runFor(WARMUP * period, TimeUnit.NANOSECONDS);
+
+        Object detector = NativeBuffers.get(camera, "detector");
+        Object grabber = NativeBuffers.get(camera, "grabber");
+        NativeBuffers buffers = NativeBuffers.of(camera, detector, grabber);
+
+        long thread = Thread.currentThread().getId();
+        long processed = camera.getProcessedFrames();
+        long before = threads.getThreadAllocatedBytes(thread);
+
+        clock.runFor(FRAMES * period, TimeUnit.NANOSECONDS);
+
+        long bytes = threads.getThreadAllocatedBytes(thread) - before;
+        processed = camera.getProcessedFrames() - processed;
+        List<String> changed = buffers.changed();
+
+        Observation o = camera.getObservation();
+        camera.stop();
+
+        assertEquals(FRAMES, processed);
+        assertTrue(o.isVisibleThisFrame());
+        assertEquals(0, camera.getDroppedFrames());
+
+        assertTrue(buffers.size() > 20, buffers.size() + " Mats found");
+        assertEquals(List.of(), changed, "Mats reallocated while the target was in view");
+        assertTrue(bytes < (long) FRAMES * (BYTES_PER_FRAME + SLACK), bytes / FRAMES + " bytes allocated per frame");
+    }
+}
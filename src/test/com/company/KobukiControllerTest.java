@@ -0,0 +1,73 @@
+package com.company;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KobukiControllerTest {
+    private static final int SECONDS = 45;
+
+    @BeforeAll
+    static void load() {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+    }
+
+    // Task 2 against the ground-truth simulation on virtual time, as Headless --simulate --ground-truth
+    // --virtual runs it: two runs must send the same commands at the same times
+    @Test
+    void virtualRunsAreRepeatable() {
+        List<String> first = run("determinism-1");
+        List<String> second = run("determinism-2");
+
+        assertTrue(first.size() > 100, first.size() + " commands");
+        assertEquals(first, second);
+    }
+
+    private static List<String> run(String name) {
+        VirtualScheduler virtual = new VirtualScheduler();
+        SimulatedKobuki kobuki = new SimulatedKobuki(virtual);
+        SimulatedPerson person = SimulatedPerson.corner(virtual.nanoTime());
+
+        SyntheticCameraSource camera = new SyntheticCameraSource(kobuki, person, CameraMount.FRONT, 640, 480, 30, virtual);
+        camera.setGroundTruth(true);
+
+        List<String> trace = new ArrayList<>();
+
+        // Every command as it reaches the robot, with the virtual time it was sent at
+        Robot robot = new Robot() {
+            public void baseControl(short speed, short radius) {
+                trace.add(virtual.nanoTime() + " " + speed + " " + radius);
+                kobuki.baseControl(speed, radius);
+            }
+
+            public int getLeftEncoder() {
+                return kobuki.getLeftEncoder();
+            }
+
+            public int getRightEncoder() {
+                return kobuki.getRightEncoder();
+            }
+
+            public void readEncoders(int[] out) {
+                kobuki.readEncoders(out);
+            }
+        };
+
+        KobukiController k = new KobukiController(name, robot, PreviewSink.NONE, virtual);
+        k.getCamera().setSource(camera);
+        k.getMetrics().stopSummaryDump();
+
+        k.startTask(2);
+        virtual.runFor(SECONDS, TimeUnit.SECONDS);
+        k.shutdown();
+
+        return trace;
+    }
+}
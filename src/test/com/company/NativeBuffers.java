@@ -0,0 +1,91 @@
+package com.company;
+
+import org.opencv.core.Mat;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Every Mat the given objects hold in their fields, with its native header and data address at the
+// time of the snapshot. A Mat that was replaced, re-created or reallocated since shows up in changed().
+final class NativeBuffers {
+    private final List<String> names = new ArrayList<>();
+    private final List<Mat> mats = new ArrayList<>();
+    private final List<Supplier<Object>> fields = new ArrayList<>();
+    private final List<long[]> addresses = new ArrayList<>();
+
+    static NativeBuffers of(Object... owners) {
+        NativeBuffers b = new NativeBuffers();
+
+        for (Object o : owners) {
+            for (Class<?> c = o.getClass(); c != Object.class; c = c.getSuperclass()) {
+                for (Field f : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(f.getModifiers()))
+                        continue;
+
+                    Object v = get(f, o);
+                    String name = c.getSimpleName() + "." + f.getName();
+
+                    if (v instanceof Mat)
+                        b.add(name, (Mat) v, () -> get(f, o));
+                    else if (v instanceof Mat[]) {
+                        Mat[] array = (Mat[]) v;
+
+                        for (int i = 0; i < array.length; i++) {
+                            int index = i;
+                            b.add(name + "[" + i + "]", array[i], () -> ((Mat[]) get(f, o))[index]);
+                        }
+                    }
+                }
+            }
+        }
+
+        return b;
+    }
+
+    // The field's value, for reaching the objects a pipeline keeps private
+    static Object get(Field f, Object o) {
+        try {
+            f.setAccessible(true);
+            return f.get(o);
+        } catch (IllegalAccessException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    static Object get(Object o, String field) {
+        try {
+            return get(o.getClass().getDeclaredField(field), o);
+        } catch (NoSuchFieldException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private void add(String name, Mat m, Supplier<Object> field) {
+        names.add(name);
+        mats.add(m);
+        fields.add(field);
+        addresses.add(new long[] { m.nativeObj, m.dataAddr() });
+    }
+
+    int size() {
+        return mats.size();
+    }
+
+    // Names of the Mats that were replaced, or whose header or data moved, since the snapshot
+    List<String> changed() {
+        List<String> changed = new ArrayList<>();
+
+        for (int i = 0; i < mats.size(); i++) {
+            Mat m = mats.get(i);
+            long[] a = addresses.get(i);
+
+            if (fields.get(i).get() != m || m.nativeObj != a[0] || m.dataAddr() != a[1])
+                changed.add(names.get(i));
+        }
+
+        return changed;
+    }
+}
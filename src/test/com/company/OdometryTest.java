@@ -0,0 +1,166 @@
+package com.company;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OdometryTest {
+    private static final long PERIOD = 20; // ms
+    private static final double TOLERANCE = 1e-9;
+
+    // Counters set by the test, read as one pair
+    private static final class ScriptedRobot implements Robot {
+        int left, right;
+
+        public void baseControl(short speed, short radius) {
+        }
+
+        public int getLeftEncoder() {
+            return left;
+        }
+
+        public int getRightEncoder() {
+            return right;
+        }
+
+        void set(int left, int right) {
+            this.left = left & 0xFFFF;
+            this.right = right & 0xFFFF;
+        }
+    }
+
+    @Test
+    void forwardAcrossWrap() {
+        // 65500 up to 65650, which the 16-bit counter reports as 114
+        assertTravel(65500, 65500, 30, 30, 150 / Odometry.TICKS_PER_METER, 0);
+    }
+
+    @Test
+    void backwardAcrossWrap() {
+        // 40 down to -110, which the 16-bit counter reports as 65426
+        assertTravel(40, 40, -30, -30, -150 / Odometry.TICKS_PER_METER, 0);
+    }
+
+    @Test
+    void spinAcrossWrapBothWays() {
+        // Left wheel back through 0, right wheel forward through 65535: a turn on the spot to the left
+        double wheel = 150 / Odometry.TICKS_PER_METER;
+
+        assertTravel(20, 65500, -30, 30, 0, 2 * wheel / Odometry.WHEELBASE);
+    }
+
+    // Steps both counters by the given ticks per sample for five samples, and checks the distance
+    // covered and the heading
+    private static void assertTravel(int left, int right, int leftStep, int rightStep, double travelled, double heading) {
+        VirtualScheduler clock = new VirtualScheduler();
+        ScriptedRobot robot = new ScriptedRobot();
+        robot.set(left, right);
+
+        boolean wrapped = false;
+
+        Odometry odometry = new Odometry(robot, PERIOD, new Metrics(), clock);
+        odometry.start();
+
+        for (int i = 0; i < 5; i++) {
+            left += leftStep;
+            right += rightStep;
+            wrapped |= left != (left & 0xFFFF) || right != (right & 0xFFFF);
+            robot.set(left, right);
+
+            clock.runFor(PERIOD, TimeUnit.MILLISECONDS);
+        }
+
+        odometry.stop();
+
+        Pose p = odometry.getPose();
+
+        assertTrue(wrapped, "the counters never wrapped");
+        assertEquals(travelled, p.getTravelled(), TOLERANCE);
+        assertEquals(heading, p.getHeading(), TOLERANCE);
+        assertEquals(robot.left, odometry.getLeftEncoder());
+        assertEquals(robot.right, odometry.getRightEncoder());
+    }
+
+    // Drives a simulated Kobuki through a recording robot, then feeds the recorded encoder pairs to a
+    // fresh Odometry: only if every pair recorded is exactly the one integrated does the pose match
+    @Test
+    void recordedPairsReplayToTheSamePose(@TempDir Path dir) throws IOException {
+        String path = dir.resolve("odometry.krec").toString();
+
+        VirtualScheduler clock = new VirtualScheduler();
+        SimulatedKobuki kobuki = new SimulatedKobuki(clock);
+        RecordingRobot robot = new RecordingRobot(kobuki, clock);
+        Recorder recorder = new Recorder(path, clock);
+        robot.setRecorder(recorder);
+
+        Odometry live = new Odometry(robot, PERIOD, new Metrics(), clock);
+        live.start();
+
+        kobuki.baseControl((short) 200, (short) 500);
+        clock.runFor(3, TimeUnit.SECONDS);
+        kobuki.baseControl((short) 100, (short) 1);
+        clock.runFor(2, TimeUnit.SECONDS);
+
+        live.stop();
+        robot.setRecorder(null);
+        recorder.close();
+
+        List<int[]> pairs = new ArrayList<>();
+        Recording recording = new Recording(path);
+
+        while (recording.next()) {
+            if (recording.getType() == Recorder.ENCODERS)
+                pairs.add(new int[] { recording.getLeftEncoder(), recording.getRightEncoder() });
+        }
+
+        recording.close();
+
+        // Odometry must only read pairs, so the replay has no single-counter reads to answer
+        Robot replay = new Robot() {
+            private int next = 0;
+
+            public void baseControl(short speed, short radius) {
+            }
+
+            public int getLeftEncoder() {
+                throw new UnsupportedOperationException();
+            }
+
+            public int getRightEncoder() {
+                throw new UnsupportedOperationException();
+            }
+
+            public void readEncoders(int[] out) {
+                int[] p = pairs.get(next++);
+                out[0] = p[0];
+                out[1] = p[1];
+            }
+        };
+
+        VirtualScheduler replayClock = new VirtualScheduler();
+        Odometry replayed = new Odometry(replay, PERIOD, new Metrics(), replayClock);
+        replayed.start();
+        replayClock.runFor(5, TimeUnit.SECONDS);
+        replayed.stop();
+
+        Pose a = live.getPose();
+        Pose b = replayed.getPose();
+
+        // One pair at start() and one per sample
+        assertEquals(5000 / PERIOD + 1, pairs.size());
+        assertNotEquals(0, a.getTravelled());
+        assertEquals(a.getX(), b.getX());
+        assertEquals(a.getY(), b.getY());
+        assertEquals(a.getHeading(), b.getHeading());
+        assertEquals(a.getTravelled(), b.getTravelled());
+    }
+}
@@ -0,0 +1,104 @@
+package com.company;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelThresholdTest {
+    // None of the heights divide evenly into the band counts, so bands differ in size and the last
+    // one ends short of a full share
+    private static final int[] HEIGHTS = { 97, 121, 479, 481 };
+    private static final int[] BANDS = { 3, 4, 7 };
+    private static final int[] KERNELS = { 3, 7 };
+
+    private final Scalar minGreen = new Scalar(0, 0, 0);
+    private final Scalar maxGreen = new Scalar(0, 0, 0);
+
+    @BeforeAll
+    static void load() {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+    }
+
+    @Test
+    void bandsMatchSerialPath() {
+        Parameters.DEFAULTS.getMinHsv(minGreen);
+        Parameters.DEFAULTS.getMaxHsv(maxGreen);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            for (int height : HEIGHTS) {
+                Mat frame = scene(320, height);
+
+                for (int k : KERNELS) {
+                    Mat strEl = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(k, k));
+                    Mat expected = serial(frame, strEl);
+
+                    for (int bands : BANDS) {
+                        Mat mask = new Mat(height, frame.cols(), CvType.CV_8UC1);
+                        new ParallelThreshold(pool, bands).apply(frame, mask, minGreen, maxGreen, strEl);
+
+                        Mat diff = new Mat();
+                        Core.compare(mask, expected, diff, Core.CMP_NE);
+                        String name = height + " rows, " + bands + " bands, kernel " + k;
+
+                        assertEquals(0, Core.countNonZero(diff), name);
+
+                        diff.release();
+                        mask.release();
+                    }
+
+                    // Morphology must have had something to do, or the halo isn't being tested
+                    assertTrue(Core.countNonZero(expected) > 0);
+
+                    expected.release();
+                    strEl.release();
+                }
+
+                frame.release();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // The chain SquareDetector runs when not banded
+    private Mat serial(Mat frame, Mat strEl) {
+        Mat hsv = new Mat();
+        Mat thresh = new Mat();
+
+        Imgproc.cvtColor(frame, hsv, Imgproc.COLOR_RGB2HSV);
+        Core.inRange(hsv, minGreen, maxGreen, thresh);
+        Imgproc.morphologyEx(thresh, thresh, Imgproc.MORPH_CLOSE, strEl);
+        Imgproc.morphologyEx(thresh, thresh, Imgproc.MORPH_OPEN, strEl);
+
+        hsv.release();
+        return thresh;
+    }
+
+    // Green squares of several sizes, some cut by the frame edges, over speckled noise with green
+    // in it, so both close and open change the mask across band boundaries
+    private static Mat scene(int width, int height) {
+        Mat frame = new Mat(height, width, CvType.CV_8UC3);
+        Core.setRNGSeed(height);
+        Core.randu(frame, 0, 256);
+
+        Scalar green = SlidingSquareSource.green();
+
+        for (int i = 0; i < 12; i++) {
+            int side = 4 + 9 * i;
+            int x = (i * 67) % width - side / 3;
+            int y = (i * 41) % height - side / 3;
+
+            Imgproc.rectangle(frame, new Point(x, y), new Point(x + side, y + side), green, -1);
+        }
+
+        return frame;
+    }
+}
@@ -0,0 +1,96 @@
+package com.company;
+
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.concurrent.TimeUnit;
+
+// A green square sliding back and forth across a grey frame, one position per frame, due every
+// frame period on the given clock. Drawn without allocating, so it adds nothing to what it measures.
+final class SlidingSquareSource implements FrameSource {
+    static final Scalar BACKGROUND = new Scalar(100, 100, 100);
+
+    private final int width;
+    private final int height;
+    private final int side;
+    private final long period;
+    private final Clock clock;
+    private final Scalar green;
+
+    private final Point p0 = new Point();
+    private final Point p1 = new Point();
+    private long frames = 0;
+    private long next;
+
+    SlidingSquareSource(int width, int height, int side, double fps, Clock clock) {
+        this.width = width;
+        this.height = height;
+        this.side = side;
+        this.period = (long) (TimeUnit.SECONDS.toNanos(1) / fps);
+        this.clock = clock;
+        this.green = green();
+    }
+
+    // A green well inside the default thresholds, in the RGB the pipeline expects
+    static Scalar green() {
+        Mat hsv = new Mat(1, 1, CvType.CV_8UC3, new Scalar(40, 130, 170));
+        Mat rgb = new Mat();
+        Imgproc.cvtColor(hsv, rgb, Imgproc.COLOR_HSV2RGB);
+
+        double[] c = rgb.get(0, 0);
+
+        hsv.release();
+        rgb.release();
+
+        return new Scalar(c[0], c[1], c[2]);
+    }
+
+    public boolean open() {
+        next = clock.nanoTime();
+        return true;
+    }
+
+    public boolean read(Mat frame) {
+        frame.create(height, width, CvType.CV_8UC3);
+        draw(frame, frames++);
+
+        next += period;
+        return true;
+    }
+
+    // Mat.setTo() would allocate, so the background is a rectangle too
+    void draw(Mat frame, long i) {
+        p0.x = 0;
+        p0.y = 0;
+        p1.x = width;
+        p1.y = height;
+        Imgproc.rectangle(frame, p0, p1, BACKGROUND, -1);
+
+        double x = width / 2.0 + (width / 2.0 - side) * Math.sin(i / 50.0);
+
+        p0.x = x - side / 2.0;
+        p0.y = height / 2.0 - side / 2.0;
+        p1.x = x + side / 2.0;
+        p1.y = height / 2.0 + side / 2.0;
+        Imgproc.rectangle(frame, p0, p1, green, -1);
+    }
+
+    public long getNextFrameTime() {
+        return next;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean isLive() {
+        return true;
+    }
+
+    public void release() {
+    }
+}
@@ -0,0 +1,161 @@
+package com.company;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class SquareDetectorTest {
+    private static final int WARMUP = 2000;
+    private static final int FRAMES = 10000;
+
+    // Small frames keep 10k detections quick; the per-frame work doesn't depend on the size
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+
+    private static com.sun.management.ThreadMXBean threads;
+
+    private final Scalar minGreen = new Scalar(0, 0, 0);
+    private final Scalar maxGreen = new Scalar(0, 0, 0);
+    private final Mat frame = new Mat(HEIGHT, WIDTH, CvType.CV_8UC3);
+
+    @BeforeAll
+    static void load() {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    }
+
+    @Test
+    void fullSearchDoesNotAllocate() {
+        SquareDetector d = new SquareDetector();
+        d.setTracking(false);
+
+        assertSteadyState(d, 24);
+    }
+
+    @Test
+    void trackingDoesNotAllocate() {
+        assertSteadyState(new SquareDetector(), 24);
+    }
+
+    @Test
+    void refinementDoesNotAllocate() {
+        SquareDetector d = new SquareDetector();
+        d.setPyramidLevel(1);
+
+        assertSteadyState(d, 60);
+    }
+
+    // Refined at full resolution, the corners found on the half-size frame should land within a
+    // fraction of a pixel of the true ones. Pixel centres are at integer coordinates, so a square
+    // covering pixels 100..299 has its corners at 99.5 and 299.5. At level 1 the kernel is halved
+    // but the blob still has to survive the open, so only squares of about 60 px or more are found.
+    @Test
+    void pyramidLevelRefinesToSubPixel() {
+        Parameters.DEFAULTS.getMinHsv(minGreen);
+        Parameters.DEFAULTS.getMaxHsv(maxGreen);
+
+        Mat hd = new Mat(1080, 1920, CvType.CV_8UC3);
+        SquareDetector d = new SquareDetector();
+        d.setTracking(false);
+        d.setPyramidLevel(1);
+
+        for (double side : new double[] { 64.6, 201.3 }) {
+            // Upright, as the target is held; the square kernel would cut the corners of a tilted one
+            double x0 = 823.37 - side / 2, y0 = 517.81 - side / 2;
+            double x1 = x0 + side, y1 = y0 + side;
+            drawSquare(hd, x0, y0, x1, y1);
+
+            MatOfPoint2f s = d.find(hd, minGreen, maxGreen);
+            assertNotNull(s, side + " px square not found");
+
+            double[][] truth = { { x0, y0 }, { x1, y0 }, { x1, y1 }, { x0, y1 } };
+
+            for (Point p : s.toArray()) {
+                double nearest = Double.MAX_VALUE;
+
+                for (double[] t : truth)
+                    nearest = Math.min(nearest, Math.hypot(p.x - t[0], p.y - t[1]));
+
+                assertTrue(nearest < 0.25, side + " px square: corner " + p + " is " + nearest + " px from the truth");
+            }
+        }
+
+        d.release();
+        hd.release();
+    }
+
+    // Exact area coverage, so the edges sit where the coordinates say; cv's anti-aliased fill draws
+    // polygons about a pixel wider than asked
+    private static void drawSquare(Mat m, double x0, double y0, double x1, double y1) {
+        Scalar green = SlidingSquareSource.green();
+        double[] background = { 90, 60, 50 };
+        byte[] row = new byte[3 * m.cols()];
+
+        Imgproc.rectangle(m, new Point(0, 0), new Point(m.cols(), m.rows()), new Scalar(background), -1);
+
+        for (int y = (int) Math.floor(y0); y <= (int) Math.ceil(y1); y++) {
+            double cy = overlap(y, y0, y1);
+
+            for (int x = 0; x < m.cols(); x++) {
+                double c = cy * overlap(x, x0, x1);
+
+                for (int k = 0; k < 3; k++)
+                    row[3 * x + k] = (byte) Math.round(background[k] + c * (green.val[k] - background[k]));
+            }
+
+            m.put(y, 0, row);
+        }
+    }
+
+    // Length of pixel i's extent, i - 0.5 to i + 0.5, inside [a, b]
+    private static double overlap(int i, double a, double b) {
+        return Math.max(0, Math.min(i + 0.5, b) - Math.max(i - 0.5, a));
+    }
+
+    private void assertSteadyState(SquareDetector d, int side) {
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        Parameters.DEFAULTS.getMinHsv(minGreen);
+        Parameters.DEFAULTS.getMaxHsv(maxGreen);
+
+        SlidingSquareSource source = new SlidingSquareSource(WIDTH, HEIGHT, side, 30, null);
+        NativeBuffers buffers = null;
+        long thread = Thread.currentThread().getId();
+        long before = 0;
+        int found = 0;
+
+        for (int i = 0; i < WARMUP + FRAMES; i++) {
+            if (i == WARMUP) {
+                buffers = NativeBuffers.of(d);
+                before = threads.getThreadAllocatedBytes(thread);
+            }
+
+            source.draw(frame, i);
+
+            if (d.find(frame, minGreen, maxGreen) != null)
+                found++;
+        }
+
+        long bytes = threads.getThreadAllocatedBytes(thread) - before;
+        List<String> changed = buffers.changed();
+
+        assertEquals(WARMUP + FRAMES, found);
+        assertEquals(1, d.getAllocations());
+
+        // Less than one object per hundred frames on the Java heap, and no native buffer replaced
+        assertTrue(bytes < FRAMES / 100 * 16, bytes + " bytes allocated over " + FRAMES + " frames");
+        assertEquals(List.of(), changed, "Mats reallocated");
+
+        d.release();
+    }
+}
@@ -0,0 +1,75 @@
+package com.company;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TargetEstimatorTest {
+    private static final long MS = 1_000_000;
+
+    private static final double TARGET_START = 2.0; // m
+    private static final double TARGET_SPEED = 0.5; // m/s
+    private static final double ROBOT_SPEED = 0.3; // m/s
+    private static final double NOISE = 0.05; // m, standard deviation of each detection
+
+    private static final long FRAME = 33 * MS;
+    private static final long ODOMETRY = 20 * MS;
+    private static final long LATENCY = 60 * MS; // capture to detection
+
+    // A person walking away at constant speed while the robot follows more slowly, seen through noisy
+    // detections that arrive a little late. The speed estimate starts at zero and should close in on
+    // the true speed; once it has, the distance predicted for when each detection arrives should be
+    // closer than the detection itself.
+    @Test
+    void predictionConvergesOnConstantVelocity() {
+        TargetEstimator e = new TargetEstimator();
+        Random random = new Random(42);
+
+        double earlySpeed = 0, lateSpeed = 0, lateSquared = 0;
+        int earlyCount = 0, lateCount = 0;
+        long nextOdometry = 0;
+
+        for (long capture = 0; capture < 10_000 * MS; capture += FRAME) {
+            long now = capture + LATENCY;
+
+            while (nextOdometry <= now) {
+                e.odometry(nextOdometry, robot(nextOdometry));
+                nextOdometry += ODOMETRY;
+            }
+
+            e.measure(capture, distance(capture) + NOISE * random.nextGaussian());
+
+            double error = e.predict(now) - distance(now);
+            double speedError = Math.abs(e.getTargetSpeed() - TARGET_SPEED);
+
+            if (capture < 1000 * MS) {
+                earlySpeed += speedError;
+                earlyCount++;
+            } else if (capture >= 5000 * MS) {
+                lateSpeed += speedError;
+                lateSquared += error * error;
+                lateCount++;
+            }
+        }
+
+        earlySpeed /= earlyCount;
+        lateSpeed /= lateCount;
+        double rms = Math.sqrt(lateSquared / lateCount);
+
+        assertTrue(lateSpeed < earlySpeed / 2, "speed off by " + earlySpeed + " m/s in the first second, " + lateSpeed + " m/s after 5 s");
+        assertTrue(lateSpeed < 0.1, "speed off by " + lateSpeed + " m/s after 5 s");
+        assertTrue(rms < 0.8 * NOISE, "rms " + rms + " m after 5 s");
+        assertEquals(0, e.getRejected());
+    }
+
+    private static double robot(long t) {
+        return ROBOT_SPEED * t / 1e9;
+    }
+
+    private static double distance(long t) {
+        return TARGET_START + TARGET_SPEED * t / 1e9 - robot(t);
+    }
+}